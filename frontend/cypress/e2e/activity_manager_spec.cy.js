@@ -4,10 +4,13 @@ describe("Activity Manager App", () => {
   beforeEach(() => {
     cy.intercept("GET", "http://localhost:8080/activities", {
       statusCode: 200,
-      body: [
-        { id: 1, name: "Test Activity 1", type: "Exercise", participants: 1 },
-        { id: 2, name: "Test Activity 2", type: "Study", participants: 2 }
-      ],
+      body: {
+        items: [
+          { id: 1, name: "Test Activity 1", type: "Exercise", participants: 1 },
+          { id: 2, name: "Test Activity 2", type: "Study", participants: 2 }
+        ],
+        nextCursor: null,
+      },
     }).as("getActivities");
 
     cy.visit("/");
@@ -42,9 +45,9 @@ describe("Activity Manager App", () => {
     });
   });
 
-  // Stub the POST call to create a new activity, and the subsequent call to refresh the data.
+  // Stub the POST call to create a new activity.
   // Open the dialog, fill in the form, and save the new activity.
-  // When the requests complete, check that the new activity appears in the table.
+  // When the request completes, check that the created activity is added to the table without reloading it.
   it("creates a new activity", () => {
     cy.intercept("POST", "http://localhost:8080/activities", (req) => {
       req.reply({
@@ -53,15 +56,6 @@ describe("Activity Manager App", () => {
       });
     }).as("postNewActivity");
 
-    cy.intercept("GET", "http://localhost:8080/activities", {
-      statusCode: 200,
-      body: [
-        { id: 1, name: "Test Activity 1", type: "Exercise", participants: 1 },
-        { id: 2, name: "Test Activity 2", type: "Study", participants: 2 },
-        { id: 3, name: "New Activity", type: "Custom", participants: 4 }
-      ],
-    }).as("getActivitiesAfterPost");
-
     cy.contains("button", "Add New Activity").click();
 
     cy.get('[role="dialog"]').within(() => {
@@ -76,32 +70,23 @@ describe("Activity Manager App", () => {
     });
 
     cy.wait("@postNewActivity");
-    cy.wait("@getActivitiesAfterPost");
 
     cy.get("tbody > tr").should("have.length", 3);
     cy.get("tbody > tr").last().should("contain", "New Activity");
   });
 
-  // Stub the PUT call to update an activity, and the subsequent call to refresh the data.
+  // Stub the PUT call to update an activity.
   // Open the edit dialog by clicking the edit icon in the first row.
   // Change the text in the "Name" field and save the edited activity.
-  // When the requests complete, check that the new activity appears in the table.
+  // When the request completes, check that the updated activity replaces the old one in the table.
   it("edits an existing activity", () => {
     cy.intercept("PUT", /http:\/\/localhost:8080\/activities\/\d+/, (req) => {
       req.reply({
         statusCode: 200,
-        body: { id: req.url.split("/").pop(), ...req.body },
+        body: { id: Number(req.url.split("/").pop()), ...req.body },
       });
     }).as("putActivity");
 
-    cy.intercept("GET", "http://localhost:8080/activities", {
-      statusCode: 200,
-      body: [
-        { id: 1, name: "Updated Activity", type: "Exercise", participants: 1 },
-        { id: 2, name: "Test Activity 2", type: "Study", participants: 2 },
-      ],
-    }).as("getActivitiesAfterPut");
-
     cy.get('button[aria-label="edit"]').first().click();
 
     cy.get('[role="dialog"]').should("be.visible");
@@ -112,64 +97,64 @@ describe("Activity Manager App", () => {
     cy.get('[role="dialog"]').contains("button", "Save").click();
 
     cy.wait("@putActivity");
-    cy.wait("@getActivitiesAfterPut");
 
+    cy.get("tbody > tr").should("have.length", 2);
     cy.get("tbody > tr")
       .first()
       .should("contain", "Updated Activity");
   });
 
-  // Stub the DELETE call to delete an activity, and the subsequent call to refresh the data.
+  // Stub the DELETE call to delete an activity.
   // Delete the first activity by clicking the delete icon in the first row.
-  // When the requests complete, check that only one row remains, and that it's not the deleted activity.
+  // When the request completes, check that only one row remains, and that it's not the deleted activity.
   it("deletes an activity", () => {
     cy.intercept("DELETE", /http:\/\/localhost:8080\/activities\/\d+/, {
       statusCode: 200,
     }).as("deleteActivity");
 
-    cy.intercept("GET", "http://localhost:8080/activities", {
-      statusCode: 200,
-      body: [
-        { id: 2, name: "Test Activity 2", type: "Study", participants: 2 }
-      ],
-    }).as("getActivitiesAfterDelete");
-
     cy.get('button[aria-label="delete"]').first().click();
 
     cy.wait("@deleteActivity");
-    cy.wait("@getActivitiesAfterDelete");
 
     cy.get("tbody > tr").should("have.length", 1);
     cy.get("tbody > tr").first().should("contain", "Test Activity 2");
   });
 
-  // Stub the POST call to create a random activity, and the subsequent call to refresh the data.
+  // Stub the POST call to create a random activity.
   // Add a random activity by clicking on the "Add Random Activity" button.
-  // When the requests complete, verify that the new activity exists in the table and has the correct name.
+  // When the request completes, verify that the new activity exists in the table and has the correct name.
   it("adds a random activity", () => {
     cy.intercept("POST", "http://localhost:8080/activities/random", {
       statusCode: 200,
       body: { id: 4, name: "Random Activity", type: "Random", participants: 3 },
     }).as("postRandomActivity");
 
-    cy.intercept("GET", "http://localhost:8080/activities", {
-      statusCode: 200,
-      body: [
-        { id: 1, name: "Test Activity 1", type: "Exercise", participants: 1 },
-        { id: 2, name: "Test Activity 2", type: "Study", participants: 2 },
-        { id: 4, name: "Random Activity", type: "Random", participants: 3 }
-      ],
-    }).as("getActivitiesAfterRandom");
-
     cy.contains("button", "Add Random Activity").click();
 
     cy.wait("@postRandomActivity");
-    cy.wait("@getActivitiesAfterRandom");
 
     cy.get("tbody > tr").should("have.length", 3);
     cy.get("tbody > tr").last().should("contain", "Random Activity");
   });
 
+  // Stub the event stream with a deletion made by another client. The short retry makes the browser reconnect and
+  // receive it again, in case it arrived before the list.
+  // Check that the activity is removed from the table without reading the list again.
+  it("applies changes made by other clients", () => {
+    cy.intercept("GET", "http://localhost:8080/activities/stream", {
+      statusCode: 200,
+      headers: { "content-type": "text/event-stream" },
+      body: 'retry:100\nevent:deleted\ndata:{"type":"DELETED","activityId":1,"changeVersion":5}\n\n',
+    }).as("stream");
+
+    cy.visit("/");
+    cy.wait("@getActivities");
+    cy.wait("@stream");
+
+    cy.get("tbody > tr").should("have.length", 1);
+    cy.get("tbody > tr").first().should("contain", "Test Activity 2");
+  });
+
   describe("Activity Manager Error Handling", () => {
     it("should display an error message when fetching activities fails", () => {
       cy.intercept('GET', 'http://localhost:8080/activities', {
@@ -190,7 +175,7 @@ describe("Activity Manager App", () => {
 
       cy.intercept("GET", "http://localhost:8080/activities", {
         statusCode: 200,
-        body: [],
+        body: {items: [], nextCursor: null},
       });
 
       cy.contains("button", "Add New Activity").click();
@@ -252,4 +237,22 @@ describe("Activity Manager App", () => {
       cy.contains("Error adding random activity.").should("be.visible");
     });
   });
+
+  // Stub the search call, then type a query into the search box.
+  // When the request completes, verify that only the matching activity is shown.
+  it("searches activities", () => {
+    cy.intercept("GET", "http://localhost:8080/activities/search?q=activty%201", {
+      statusCode: 200,
+      body: [
+        { id: 1, name: "Test Activity 1", type: "Exercise", participants: 1 }
+      ],
+    }).as("searchActivities");
+
+    cy.get('input[type="text"]').first().type("activty 1");
+
+    cy.wait("@searchActivities");
+
+    cy.get("tbody > tr").should("have.length", 1);
+    cy.get("tbody > tr").first().should("contain", "Test Activity 1");
+  });
 });
@@ -1,6 +1,6 @@
 'use client'
 
-import {useEffect, useState} from 'react';
+import {useEffect, useRef, useState} from 'react';
 import Box from '@mui/material/Box';
 import Typography from '@mui/material/Typography';
 import Button from '@mui/material/Button';
@@ -205,6 +205,9 @@ function ActivityManagerApp() {
   const [openDialog, setOpenDialog] = useState(false);
   const [editingActivity, setEditingActivity] = useState(null);
   const [error, setError] = useState(/** @type {string|null} */ (null));
+  const [query, setQuery] = useState("");
+  // Read by fetchData and upsertActivity, which the EventSource listeners capture from the first render
+  const queryRef = useRef("");
 
   const fetchWithTimeout = (url, options = {}, timeout = 5000) => {
     return Promise.race([
@@ -215,10 +218,10 @@ function ActivityManagerApp() {
     ]);
   };
 
-  const fetchData = () => {
-    setLoading(true);
-    setError(null);
-    fetchWithTimeout("http://localhost:8080/activities")
+  // Follows the nextCursor of each page until the last page has been read.
+  // "no-cache" revalidates with the stored ETag, so the browser reuses its copy of a page while the table is unchanged.
+  const fetchPages = (url, accumulated = []) => {
+    return fetchWithTimeout(url, {cache: "no-cache"})
       .then((res) => {
         if (!res.ok) {
           throw new Error("Network response was not OK");
@@ -226,9 +229,33 @@ function ActivityManagerApp() {
         return res.json();
       })
       .then((data) => {
-        if (!Array.isArray(data)) {
-          throw new Error("Expected an array of activities");
+        if (!data || !Array.isArray(data.items)) {
+          throw new Error("Expected a page of activities");
+        }
+        const activities = accumulated.concat(data.items);
+        if (data.nextCursor == null) {
+          return activities;
         }
+        return fetchPages(`http://localhost:8080/activities?after=${data.nextCursor}`, activities);
+      });
+  };
+
+  const fetchSearchResults = (query) => {
+    return fetchWithTimeout(`http://localhost:8080/activities/search?q=${encodeURIComponent(query)}`)
+      .then((res) => {
+        if (!res.ok) {
+          throw new Error("Network response was not OK");
+        }
+        return res.json();
+      });
+  };
+
+  const fetchData = () => {
+    setLoading(true);
+    setError(null);
+    const query = queryRef.current.trim();
+    (query ? fetchSearchResults(query) : fetchPages("http://localhost:8080/activities"))
+      .then((data) => {
         setActivities(data);
         setLoading(false);
       })
@@ -240,8 +267,52 @@ function ActivityManagerApp() {
       });
   };
 
+  // Searches as the user types, waiting for a pause so every keystroke does not send a request
+  useEffect(() => {
+    queryRef.current = query;
+    const timeout = setTimeout(fetchData, query ? 250 : 0);
+    return () => clearTimeout(timeout);
+  }, [query]);
+
+  // Adds the activity, or replaces an older copy of it, keeping the list in id order like the pages it came from.
+  // Search results are ranked, so a new activity only shows up in them once the search runs again.
+  const upsertActivity = (activity) => {
+    setActivities((activities) => {
+      const index = activities.findIndex((existing) => existing.id === activity.id);
+      if (index >= 0) {
+        const existing = activities[index];
+        if (existing.version != null && activity.version != null && activity.version < existing.version) {
+          return activities;
+        }
+        return activities.map((existing, i) => i === index ? activity : existing);
+      }
+      if (queryRef.current.trim()) {
+        return activities;
+      }
+      const next = activities.findIndex((existing) => existing.id > activity.id);
+      return next < 0
+        ? [...activities, activity]
+        : [...activities.slice(0, next), activity, ...activities.slice(next)];
+    });
+  };
+
+  const removeActivity = (id) => {
+    setActivities((activities) => activities.filter((activity) => activity.id !== id));
+  };
+
+  // Applies the changes other clients make as they happen. Only a resync, sent when events were missed,
+  // reads the whole list again.
   useEffect(() => {
-    fetchData()
+    if (typeof EventSource === "undefined") {
+      return;
+    }
+    const eventSource = new EventSource("http://localhost:8080/activities/stream");
+    const upsert = (e) => upsertActivity(JSON.parse(e.data).activity);
+    eventSource.addEventListener("created", upsert);
+    eventSource.addEventListener("updated", upsert);
+    eventSource.addEventListener("deleted", (e) => removeActivity(JSON.parse(e.data).activityId));
+    eventSource.addEventListener("resync", () => fetchData());
+    return () => eventSource.close();
   }, []);
 
   const handleAddRandomActivity = () => {
@@ -256,8 +327,8 @@ function ActivityManagerApp() {
         }
         return res.json();
       })
-      .then(() => {
-        fetchData();
+      .then((activity) => {
+        upsertActivity(activity);
       })
       .catch((error) => {
         console.error("Error adding random activity:", error);
@@ -301,8 +372,8 @@ function ActivityManagerApp() {
         }
         return res.json();
       })
-      .then(() => {
-        fetchData();
+      .then((savedActivity) => {
+        upsertActivity(savedActivity);
         setOpenDialog(false);
       })
       .catch((error) => {
@@ -320,9 +391,8 @@ function ActivityManagerApp() {
         if (!res.ok) {
           throw new Error("HTTP error in deleting activity");
         }
-        return fetchData();
+        removeActivity(id);
       })
-      .then(() => fetchData())
       .catch((error) => {
         console.error("Error deleting activity:", error);
         setError("Error deleting activity.");
@@ -350,6 +420,12 @@ function ActivityManagerApp() {
         loading={loading}
         handleOpenAddDialog={handleOpenAddDialog}
         handleAddRandomActivity={handleAddRandomActivity}/>
+      <TextField
+        label="Search activities"
+        value={query}
+        onChange={(e) => setQuery(e.target.value)}
+        size="small"
+      />
       {error && <Alert severity="error">{error}</Alert>}
       {loading ? (
         <Box sx={{display: "flex", justifyContent: "center", mt: 3}}>
@@ -0,0 +1,28 @@
+package com.ounal.activity_manager;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a Bored API response into an entity, done for every random activity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivityConversionBenchmark {
+
+    private final ActivityDto activityDto = ActivityDto.builder()
+            .name("random name")
+            .type("random type")
+            .participants(24)
+            .build();
+
+    @Benchmark
+    public Activity convertActivityDtoToEntity() {
+        return ActivityService.convertActivityDtoToEntity(activityDto);
+    }
+}
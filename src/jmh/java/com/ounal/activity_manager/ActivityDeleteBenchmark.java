@@ -0,0 +1,87 @@
+package com.ounal.activity_manager;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deleting one activity by id: {@link ActivityRepository#deleteById}, which loads the entity and then removes it,
+ * against the single DELETE of {@link ActivityRepository#removeById}.
+ * Every iteration deletes a fresh batch of rows, so no invocation deletes a row that is already gone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, batchSize = ActivityDeleteBenchmark.DELETES_PER_ITERATION)
+@Measurement(iterations = 10, batchSize = ActivityDeleteBenchmark.DELETES_PER_ITERATION)
+@Fork(1)
+public class ActivityDeleteBenchmark {
+
+    static final int DELETES_PER_ITERATION = 1_000;
+
+    @Param({"h2", "mysql"})
+    public String database;
+
+    private ConfigurableApplicationContext context;
+    private ActivityRepository activityRepository;
+    private TransactionTemplate transactionTemplate;
+    private Deque<Long> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var builder = new SpringApplicationBuilder(ActivityManagerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "activity-manager.random-pool.enabled=false",
+                        "logging.level.root=WARN");
+        if (database.equals("mysql")) {
+            builder.profiles("mysql");
+        } else {
+            builder.properties("spring.datasource.url=jdbc:h2:mem:benchmark");
+        }
+        context = builder.run();
+
+        activityRepository = context.getBean(ActivityRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void seedActivities() {
+        var activities = new ArrayList<Activity>(DELETES_PER_ITERATION);
+        for (var i = 0; i < DELETES_PER_ITERATION; i++) {
+            activities.add(Activity.builder()
+                    .name("Activity name " + i)
+                    .type("Activity type " + i % 10)
+                    .participants(i % 8 + 1)
+                    .build());
+        }
+
+        ids = new ArrayDeque<>();
+        activityRepository.saveAll(activities).forEach(activity -> ids.add(activity.getId()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // The path deleteActivity took before: SELECT by id, then DELETE
+    @Benchmark
+    public void deleteAfterLoad() {
+        var id = ids.pop();
+        transactionTemplate.executeWithoutResult(status -> activityRepository.deleteById(id));
+    }
+
+    @Benchmark
+    public int deleteWithSingleStatement() {
+        var id = ids.pop();
+        return transactionTemplate.execute(status -> activityRepository.removeById(id));
+    }
+}
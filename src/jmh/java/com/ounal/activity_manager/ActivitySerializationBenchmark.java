@@ -0,0 +1,74 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of activity lists, as written by the list and export endpoints, in JSON and in the binary
+ * formats clients can ask for instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivitySerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final ObjectMapper smileMapper = new SmileMapper();
+    private List<Activity> activities;
+    private List<ActivityDto> activityDtos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        activities = new ArrayList<>(size);
+        activityDtos = new ArrayList<>(size);
+
+        for (var i = 0; i < size; i++) {
+            activities.add(Activity.builder()
+                    .id((long) i)
+                    .name("Activity name " + i)
+                    .type("Activity type " + i % 10)
+                    .participants(i % 8 + 1)
+                    .changeVersion((long) i)
+                    .build());
+            activityDtos.add(ActivityDto.builder()
+                    .name("Activity name " + i)
+                    .type("Activity type " + i % 10)
+                    .participants(i % 8 + 1)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeActivities() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(activities);
+    }
+
+    @Benchmark
+    public byte[] serializeActivitiesAsCbor() throws JsonProcessingException {
+        return cborMapper.writeValueAsBytes(activities);
+    }
+
+    @Benchmark
+    public byte[] serializeActivitiesAsSmile() throws JsonProcessingException {
+        return smileMapper.writeValueAsBytes(activities);
+    }
+
+    @Benchmark
+    public byte[] serializeActivityDtos() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(activityDtos);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ounal.activity_manager;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ActivityService through the same Spring context as the application, against either the default in-memory H2
+ * database or the {@code mysql} profile. The MySQL variant needs {@code docker compose up -d mysql}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivityServiceBenchmark {
+
+    private static final int SEEDED_ACTIVITIES = 10_000;
+
+    @Param({"h2", "mysql"})
+    public String database;
+
+    private ConfigurableApplicationContext context;
+    private ActivityService activityService;
+    private List<Long> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var builder = new SpringApplicationBuilder(ActivityManagerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "activity-manager.random-pool.enabled=false",
+                        "logging.level.root=WARN");
+        if (database.equals("mysql")) {
+            builder.profiles("mysql");
+        } else {
+            builder.properties("spring.datasource.url=jdbc:h2:mem:benchmark");
+        }
+        context = builder.run();
+
+        activityService = context.getBean(ActivityService.class);
+
+        var activities = new ArrayList<Activity>(SEEDED_ACTIVITIES);
+        for (var i = 0; i < SEEDED_ACTIVITIES; i++) {
+            activities.add(newActivity(i));
+        }
+
+        ids = activityService.createActivities(activities).stream()
+                .map(ActivityBatchResult::getId)
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Activity createActivity() {
+        return activityService.createActivity(newActivity(ThreadLocalRandom.current().nextInt()));
+    }
+
+    @Benchmark
+    public Activity updateActivity() {
+        var random = ThreadLocalRandom.current();
+        var id = ids.get(random.nextInt(ids.size()));
+
+        return activityService.updateActivity(id, newActivity(random.nextInt()), null);
+    }
+
+    // Random cursors, so most pages miss the page cache and reach the database
+    @Benchmark
+    public ActivityPage getActivities() {
+        var after = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+
+        return activityService.getActivities(after, ActivityService.DEFAULT_PAGE_SIZE, new ActivityFilter(),
+                activityService.getTableVersionTag());
+    }
+
+    private static Activity newActivity(int i) {
+        return Activity.builder()
+                .name("Activity name " + i)
+                .type("Activity type " + Math.floorMod(i, 10))
+                .participants(Math.floorMod(i, 8) + 1)
+                .build();
+    }
+}
@@ -0,0 +1,255 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model HTTP load test against a locally booted application backed by {@link StubBoredApi}.
+ * <p>
+ * Requests are issued on a fixed schedule regardless of how fast responses come back, and latency is measured from
+ * each request's intended start time, so a stalled server shows up in the percentiles instead of silently lowering
+ * the offered load (coordinated omission). Configured through {@code loadtest.*} system properties, see the
+ * {@code load-test} Maven profile.
+ */
+public class ActivityLoadTest {
+
+    private static final int SEEDED_ACTIVITIES = 1_000;
+    private static final String[] TYPES = {"education", "recreational", "social", "charity", "cooking", "relaxation", "busywork"};
+
+    enum Operation {
+        LIST(50), GET(25), CREATE(10), UPDATE(10), RANDOM(5);
+
+        private final int weight;
+
+        Operation(int weight) {
+            this.weight = weight;
+        }
+
+        static Operation pick(int roll) {
+            for (var operation : values()) {
+                if (roll < operation.weight) {
+                    return operation;
+                }
+                roll -= operation.weight;
+            }
+            throw new IllegalStateException("Operation weights must add up to 100");
+        }
+    }
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final LongAdder dropped = new LongAdder();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newCachedThreadPool())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Also the number of connections the client opens, one per request in flight
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final String baseUrl;
+    private List<Long> ids;
+
+    ActivityLoadTest(String baseUrl, int maxInFlight) {
+        this.baseUrl = baseUrl;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        for (var operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var rps = Integer.getInteger("loadtest.rps", 200);
+        var duration = Duration.ofSeconds(Integer.getInteger("loadtest.duration-seconds", 30));
+        var warmup = Duration.ofSeconds(Integer.getInteger("loadtest.warmup-seconds", 5));
+        var upstreamLatency = Duration.ofMillis(Integer.getInteger("loadtest.upstream-latency-ms", 50));
+        var upstreamErrorRate = Double.parseDouble(System.getProperty("loadtest.upstream-error-rate", "0.0"));
+        var maxInFlight = Integer.getInteger("loadtest.max-in-flight", 1_000);
+        var profiles = System.getProperty("loadtest.profiles", "");
+        var reportDir = Path.of(System.getProperty("loadtest.report-dir", "target/load-test"));
+
+        try (var stub = new StubBoredApi(upstreamLatency, upstreamErrorRate);
+             var context = new SpringApplicationBuilder(ActivityManagerApplication.class)
+                     .profiles(profiles.isBlank() ? new String[0] : profiles.split(","))
+                     .properties(
+                             "server.port=0",
+                             "spring.datasource.url=jdbc:h2:mem:loadtest",
+                             "spring.r2dbc.url=r2dbc:h2:mem:///loadtest",
+                             // Tomcat refuses connections beyond this, Netty has no such limit
+                             "server.tomcat.max-connections=" + Math.max(maxInFlight, 8192),
+                             "activity-manager.upstream.random-activity-url=" + stub.getRandomActivityUrl(),
+                             "logging.level.root=WARN")
+                     .run()) {
+            var port = context.getEnvironment().getRequiredProperty("local.server.port");
+            var loadTest = new ActivityLoadTest("http://localhost:" + port, maxInFlight);
+
+            loadTest.seed();
+            System.out.printf("Warming up for %ds at %d req/s%n", warmup.toSeconds(), rps);
+            loadTest.run(rps, warmup);
+            loadTest.reset();
+            System.out.printf("Measuring for %ds at %d req/s, up to %d in flight (profiles: %s)%n",
+                    duration.toSeconds(), rps, maxInFlight, profiles.isBlank() ? "default" : profiles);
+            loadTest.run(rps, duration);
+            loadTest.report(duration, reportDir);
+        }
+        System.exit(0);
+    }
+
+    void seed() throws IOException, InterruptedException {
+        var activities = new ArrayList<Activity>(SEEDED_ACTIVITIES);
+        for (var i = 0; i < SEEDED_ACTIVITIES; i++) {
+            activities.add(newActivity());
+        }
+        var response = httpClient.send(jsonRequest("/activities/batch")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(activities)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        List<ActivityBatchResult> results = objectMapper.readValue(response.body(), new TypeReference<>() {});
+        ids = results.stream().map(ActivityBatchResult::getId).toList();
+    }
+
+    void run(int rps, Duration duration) throws InterruptedException {
+        var intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        var start = System.nanoTime();
+        var end = start + duration.toNanos();
+
+        for (long intendedStart = start; intendedStart < end; intendedStart += intervalNanos) {
+            var delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            var operation = Operation.pick(ThreadLocalRandom.current().nextInt(100));
+            if (!inFlight.tryAcquire()) {
+                dropped.increment();
+                errors.get(operation).increment();
+                continue;
+            }
+            send(operation, intendedStart);
+        }
+
+        // Let the tail of the schedule complete so its latencies are recorded
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    void reset() {
+        histograms.values().forEach(Histogram::reset);
+        errors.values().forEach(LongAdder::reset);
+        dropped.reset();
+    }
+
+    void report(Duration duration, Path reportDir) throws IOException {
+        Files.createDirectories(reportDir);
+        System.out.printf("%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+                "op", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        var total = new Histogram(3);
+        for (var operation : Operation.values()) {
+            var histogram = histograms.get(operation);
+            total.add(histogram);
+            printRow(operation.name(), histogram, errors.get(operation).sum(), duration);
+            writeHistogram(histogram, reportDir.resolve(operation.name().toLowerCase() + ".hgrm"));
+        }
+        var totalErrors = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        printRow("TOTAL", total, totalErrors, duration);
+        writeHistogram(total, reportDir.resolve("total.hgrm"));
+
+        if (dropped.sum() > 0) {
+            System.out.printf("%d requests were dropped because %d were already in flight%n", dropped.sum(), maxInFlight);
+        }
+        System.out.println("Latency distributions written to " + reportDir.toAbsolutePath());
+    }
+
+    private void send(Operation operation, long intendedStart) {
+        httpClient.sendAsync(request(operation), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    var latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+                    histograms.get(operation).recordValue(latencyMicros);
+                    if (failure != null || response.statusCode() >= 400) {
+                        errors.get(operation).increment();
+                    }
+                    inFlight.release();
+                });
+    }
+
+    private HttpRequest request(Operation operation) {
+        var random = ThreadLocalRandom.current();
+        try {
+            return switch (operation) {
+                case LIST -> HttpRequest.newBuilder(URI.create(baseUrl + "/activities?limit=50&after="
+                                + ids.get(random.nextInt(ids.size())))).GET().build();
+                case GET -> HttpRequest.newBuilder(URI.create(baseUrl + "/activities/"
+                                + ids.get(random.nextInt(ids.size())))).GET().build();
+                case CREATE -> jsonRequest("/activities")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(newActivity())))
+                        .build();
+                case UPDATE -> jsonRequest("/activities/" + ids.get(random.nextInt(ids.size())))
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(newActivity())))
+                        .build();
+                case RANDOM -> jsonRequest("/activities/random")
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+            };
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder jsonRequest(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json");
+    }
+
+    private static Activity newActivity() {
+        var random = ThreadLocalRandom.current();
+        return Activity.builder()
+                .name("Load test activity " + random.nextInt(1_000_000))
+                .type(TYPES[random.nextInt(TYPES.length)])
+                .participants(random.nextInt(1, 6))
+                .build();
+    }
+
+    private static void printRow(String name, Histogram histogram, long errors, Duration duration) {
+        System.out.printf("%-8s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                name,
+                histogram.getTotalCount(),
+                errors,
+                (double) histogram.getTotalCount() / duration.toSeconds(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private static void writeHistogram(Histogram histogram, Path file) throws IOException {
+        try (var out = new PrintStream(Files.newOutputStream(file))) {
+            // Recorded in microseconds, reported in milliseconds
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+}
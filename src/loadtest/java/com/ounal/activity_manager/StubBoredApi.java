@@ -0,0 +1,78 @@
+package com.ounal.activity_manager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local stand-in for the Bored API's random activity endpoint, with configurable latency and error rate,
+ * so load tests do not depend on (or hammer) the real service.
+ */
+public class StubBoredApi implements AutoCloseable {
+
+    private static final String[] TYPES = {"education", "recreational", "social", "charity", "cooking", "relaxation", "busywork"};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration latency;
+    private final double errorRate;
+
+    public StubBoredApi(Duration latency, double errorRate) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/random", this::handleRandom);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    public String getRandomActivityUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/random";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleRandom(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sleep(latency);
+
+            var random = ThreadLocalRandom.current();
+            if (random.nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            var body = """
+                    {"activity":"Stub activity %d","type":"%s","participants":%d}"""
+                    .formatted(random.nextInt(1_000_000), TYPES[random.nextInt(TYPES.length)], random.nextInt(1, 6))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.ounal.activity_manager;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Entity
@@ -11,13 +13,31 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "activities")
-public class Activity {
+// Indexes mirror the Flyway migrations
+@Table(name = "activities",
+        indexes = {
+                @Index(name = "idx_activities_change_version", columnList = "change_version"),
+                @Index(name = "idx_activities_type_id_participants", columnList = "type, id, participants"),
+                @Index(name = "idx_activities_name_id", columnList = "name, id")
+        })
+public class Activity implements ActivitySummary {
 
+    // Pooled sequence instead of IDENTITY, so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "activities_seq")
+    @SequenceGenerator(name = "activities_seq", sequenceName = "activities_seq", allocationSize = 50)
     private Long id;
     private String name;
     private String type;
     private Integer participants;
+    // Set by ActivityService on every write, see ChangeVersionTracker
+    @Column(name = "change_version")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @EqualsAndHashCode.Exclude
+    private Long changeVersion;
+    // Optimistic lock, exposed as the ETag of GET /activities/{id} and checked against If-Match on update
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @EqualsAndHashCode.Exclude
+    private Long version;
 }
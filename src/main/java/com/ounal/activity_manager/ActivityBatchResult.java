@@ -0,0 +1,27 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityBatchResult {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        FAILED
+    }
+
+    private Long id;
+    private Status status;
+    // Null for deletions and failures
+    private Activity activity;
+    private String error;
+}
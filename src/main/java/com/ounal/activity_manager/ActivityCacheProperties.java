@@ -0,0 +1,13 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.cache")
+public class ActivityCacheProperties {
+
+    // Caffeine specs, recordStats is needed for the cache metrics
+    private String activitySpec = "maximumSize=10000,expireAfterWrite=10m,recordStats";
+    private String pageSpec = "maximumSize=500,expireAfterWrite=1m,recordStats";
+}
@@ -0,0 +1,24 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityChanges {
+
+    // Activities created or updated after the requested version
+    private List<Activity> upserts;
+    // Ids of activities deleted after the requested version
+    private List<Long> deletions;
+    // Version to pass as "since" on the next call
+    private long version;
+    // Id to pass as "after" with the version when more changes follow, null once the client is up to date
+    private Long nextCursor;
+}
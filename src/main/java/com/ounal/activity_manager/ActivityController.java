@@ -1,24 +1,77 @@
 package com.ounal.activity_manager;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/activities")
+@Profile("!" + AppConfig.REACTIVE_PROFILE)
 public class ActivityController {
 
+    static final String PREFER = "Prefer";
+    static final String RESPOND_ASYNC = "respond-async";
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+    // Expected version that no activity has, so the update fails with 412, or 404 if the activity does not exist
+    static final long NO_VERSION = -1;
+
     private final ActivityService activityService;
+    private final ActivityIngestQueue activityIngestQueue;
+    private final ActivityEventBroadcaster activityEventBroadcaster;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ActivityController(ActivityService activityService) {
+    public ActivityController(ActivityService activityService,
+                              ActivityIngestQueue activityIngestQueue,
+                              ActivityEventBroadcaster activityEventBroadcaster,
+                              ObjectMapper objectMapper) {
         this.activityService = activityService;
+        this.activityIngestQueue = activityIngestQueue;
+        this.activityEventBroadcaster = activityEventBroadcaster;
+        this.objectMapper = objectMapper;
     }
 
+    // With ingestion enabled, clients that send "Prefer: respond-async" get 202 as soon as the activity is journaled
     @PostMapping
-    public Activity createActivity(@RequestBody Activity activity) {
-        return activityService.createActivity(activity);
+    public ResponseEntity<?> createActivity(@RequestBody Activity activity,
+                                            @RequestHeader(value = PREFER, required = false) String prefer) {
+        if (activityIngestQueue.isEnabled() && prefersRespondAsync(prefer)) {
+            var status = activityIngestQueue.submit(activity);
+
+            return ResponseEntity.accepted()
+                    .location(URI.create("/activities/ingest/" + status.getTrackingId()))
+                    .body(status);
+        }
+
+        return ResponseEntity.ok(activityService.createActivity(activity));
+    }
+
+    @GetMapping("/ingest/{trackingId}")
+    public ResponseEntity<ActivityIngestStatus> getIngestStatus(@PathVariable String trackingId) {
+        return ResponseEntity.of(activityIngestQueue.getStatus(trackingId));
+    }
+
+    @PostMapping("/batch")
+    public List<ActivityBatchResult> createActivities(@RequestBody List<Activity> activities) {
+        return activityService.createActivities(activities);
     }
 
     @PostMapping("/random")
@@ -27,17 +80,214 @@ public class ActivityController {
     }
 
     @GetMapping
-    public List<Activity> getAllActivities() {
-        return activityService.getAllActivities();
+    public ResponseEntity<ActivityPage> getActivities(@RequestParam(required = false) Long after,
+                                                      @RequestParam(defaultValue = "" + ActivityService.DEFAULT_PAGE_SIZE) int limit,
+                                                      @RequestParam(required = false) String type,
+                                                      @RequestParam(required = false) Integer minParticipants,
+                                                      @RequestParam(required = false) Integer maxParticipants,
+                                                      WebRequest webRequest) {
+        var tableVersionTag = activityService.getTableVersionTag();
+        var eTag = tableETag(tableVersionTag);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        var filter = ActivityFilter.builder()
+                .type(type)
+                .minParticipants(minParticipants)
+                .maxParticipants(maxParticipants)
+                .build();
+
+        return withETag(activityService.getActivities(after, limit, filter, tableVersionTag), eTag);
+    }
+
+    @GetMapping("/by-name")
+    public List<Activity> getActivitiesByNamePrefix(@RequestParam String prefix,
+                                                    @RequestParam(defaultValue = "" + ActivityService.DEFAULT_PAGE_SIZE) int limit) {
+        return activityService.getActivitiesByNamePrefix(prefix, limit);
+    }
+
+    @GetMapping("/search")
+    public List<Activity> searchActivities(@RequestParam("q") String query,
+                                           @RequestParam(defaultValue = "" + ActivityService.DEFAULT_PAGE_SIZE) int limit) {
+        return activityService.searchActivities(query, limit);
+    }
+
+    @GetMapping("/stats")
+    public ActivityStats getStats() {
+        return activityService.getStats();
+    }
+
+    // Tagged with the activity's own version, so the ETag can be sent back as If-Match on update.
+    // A revalidation is checked against the activity cache, which every write through the service evicts: a cached
+    // activity is answered without a query, and a miss loads the activity once for both the check and the body.
+    @GetMapping("/{id}")
+    public ResponseEntity<Activity> getActivity(@PathVariable Long id, WebRequest webRequest) {
+        var activity = activityService.getActivity(id);
+        var eTag = versionETag(activity.getVersion());
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return withETag(activity, eTag);
+    }
+
+    @GetMapping("/changes")
+    public ActivityChanges getChanges(@RequestParam long since,
+                                      @RequestParam(required = false) Long after,
+                                      @RequestParam(defaultValue = "" + ActivityService.MAX_PAGE_SIZE) int limit) {
+        return activityService.getChanges(since, after, limit);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamActivityEvents(@RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId) {
+        return activityEventBroadcaster.subscribe(lastEventId);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportActivities() {
+        StreamingResponseBody body = outputStream -> {
+            var bufferedOutputStream = new BufferedOutputStream(outputStream);
+            // Stop Jackson from closing the response stream after each activity
+            var writer = objectMapper.writer()
+                    .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            activityService.exportActivities(activity -> {
+                try {
+                    writer.writeValue(bufferedOutputStream, activity);
+                    bufferedOutputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            bufferedOutputStream.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @PutMapping("/{id}")
-    public Activity updateActivity(@PathVariable Long id, @RequestBody Activity activity) {
-        return activityService.updateActivity(id, activity);
+    public ResponseEntity<Activity> updateActivity(@PathVariable Long id,
+                                                   @RequestBody Activity activity,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var updatedActivity = activityService.updateActivity(id, activity, expectedVersion(id, ifMatch));
+
+        return ResponseEntity.ok()
+                .eTag(versionETag(updatedActivity.getVersion()))
+                .body(updatedActivity);
+    }
+
+    // Sends and writes only the changed attributes, and unlike PUT keeps concurrent edits to other attributes
+    @PatchMapping(value = "/{id}", consumes = {ActivityPatch.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Activity> patchActivity(@PathVariable Long id,
+                                                  @RequestBody JsonNode patch,
+                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var patchedActivity = activityService.patchActivity(id, ActivityPatch.fromJson(patch), expectedVersion(id, ifMatch));
+
+        return ResponseEntity.ok()
+                .eTag(versionETag(patchedActivity.getVersion()))
+                .body(patchedActivity);
+    }
+
+    @PutMapping("/batch")
+    public List<ActivityBatchResult> updateActivities(@RequestBody List<Activity> activities) {
+        return activityService.updateActivities(activities);
     }
 
+    // Answers 200 whether or not the activity existed, so a retried delete does not look like a failure
     @DeleteMapping("/{id}")
     public void deleteActivity(@PathVariable Long id) {
         activityService.deleteActivity(id);
     }
+
+    @DeleteMapping(params = "type")
+    public int deleteActivitiesByType(@RequestParam String type) {
+        return activityService.deleteActivitiesByType(type);
+    }
+
+    @DeleteMapping("/batch")
+    public List<ActivityBatchResult> deleteActivities(@RequestBody List<Long> ids) {
+        return activityService.deleteActivities(ids);
+    }
+
+    // Prefer (RFC 7240) holds a comma-separated list of preferences, possibly with parameters
+    private static boolean prefersRespondAsync(String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+
+        for (var preference : prefer.split(",")) {
+            if (preference.split(";")[0].trim().equalsIgnoreCase(RESPOND_ASYNC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Several listed versions can only be told apart by the current one. The update still checks the version it
+    // is given, so a write in between makes it fail as usual.
+    private Long expectedVersion(Long id, String ifMatch) {
+        var versions = parseVersionETags(ifMatch);
+        if (versions == null) {
+            return null;
+        }
+        if (versions.size() > 1) {
+            var currentVersion = activityService.getActivityVersion(id);
+            return versions.contains(currentVersion) ? currentVersion : NO_VERSION;
+        }
+        return versions.isEmpty() ? NO_VERSION : versions.iterator().next();
+    }
+
+    // Package-private, like parseVersionETags, for ReactiveActivityController in src/reactive/java
+    static String versionETag(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    // Weak, because Tomcat does not compress a response with a strong ETag. Pages are only ever revalidated with
+    // If-None-Match, which compares weakly, so the tag still matches.
+    static String tableETag(String tableVersionTag) {
+        return "W/\"" + tableVersionTag + "\"";
+    }
+
+    /**
+     * The versions listed in an If-Match header, or {@code null} for a missing or {@code *} If-Match, which updates
+     * unconditionally. If-Match compares strongly, so weak tags never match, and neither do tags that are not
+     * versions: they are left out, and an empty set can only fail.
+     */
+    static Set<Long> parseVersionETags(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+
+        var versions = new LinkedHashSet<Long>();
+        for (var tag : ifMatch.split(",")) {
+            var trimmedTag = tag.trim();
+            if (trimmedTag.equals("*")) {
+                return null;
+            }
+            if (trimmedTag.length() < 2 || !trimmedTag.startsWith("\"") || !trimmedTag.endsWith("\"")) {
+                continue;
+            }
+
+            try {
+                versions.add(Long.valueOf(trimmedTag.substring(1, trimmedTag.length() - 1)));
+            } catch (NumberFormatException e) {
+                // Not one of our tags
+            }
+        }
+        return versions;
+    }
+
+    // no-cache makes clients revalidate with If-None-Match on every read instead of guessing freshness.
+    // The same data can be sent as JSON, CBOR or Smile, so caches have to keep the representations apart.
+    private static <T> ResponseEntity<T> withETag(T body, String eTag) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(eTag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body);
+    }
 }
@@ -0,0 +1,46 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Published by ActivityService after a write has committed, and pushed to stream subscribers.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        // Too many changes to describe one by one, reload via /activities/changes
+        RESYNC
+    }
+
+    private Type type;
+    private Long activityId;
+    // Null for deletions and resyncs
+    private Activity activity;
+    private Long changeVersion;
+
+    public static ActivityEvent created(Activity activity) {
+        return new ActivityEvent(Type.CREATED, activity.getId(), activity, activity.getChangeVersion());
+    }
+
+    public static ActivityEvent updated(Activity activity) {
+        return new ActivityEvent(Type.UPDATED, activity.getId(), activity, activity.getChangeVersion());
+    }
+
+    public static ActivityEvent deleted(Long activityId, long changeVersion) {
+        return new ActivityEvent(Type.DELETED, activityId, null, changeVersion);
+    }
+
+    public static ActivityEvent resync() {
+        return new ActivityEvent(Type.RESYNC, null, null, null);
+    }
+}
@@ -0,0 +1,256 @@
+package com.ounal.activity_manager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes activity events to Server-Sent Events subscribers.
+ * <p>
+ * Idle subscribers are parked async requests and hold no thread. Each subscriber has a bounded buffer
+ * that is drained only while it has events, so a writer never waits for a client. Drains run on a pool of their own,
+ * so clients that read slowly cannot take threads from the other background work.
+ * When a slow subscriber's buffer overflows, its buffered events are dropped and it receives a single
+ * {@link ActivityEvent.Type#RESYNC} event instead. So does a client that reconnects with a {@code Last-Event-ID},
+ * because event ids are change versions, which commit out of order and so cannot tell what the client missed.
+ * <p>
+ * A send blocks while the client's socket buffer is full, and an emitter cannot be completed during a send. So a
+ * subscriber whose send has taken longer than the send timeout is dropped: it gets no more events, its stream is
+ * completed once the send returns, and the pool starts a thread in place of the stuck one so the other subscribers
+ * keep being served. The client reconnects with its {@code Last-Event-ID} and resyncs.
+ */
+@Component
+public class ActivityEventBroadcaster {
+
+    private final ActivityEventsProperties properties;
+    private final TaskExecutor sendExecutor;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Counter resyncs;
+    private final Counter drops;
+
+    @Autowired
+    public ActivityEventBroadcaster(ActivityEventsProperties properties, MeterRegistry meterRegistry) {
+        this(properties, newSendExecutor(properties), meterRegistry);
+    }
+
+    ActivityEventBroadcaster(ActivityEventsProperties properties,
+                             TaskExecutor sendExecutor,
+                             MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.sendExecutor = sendExecutor;
+
+        this.resyncs = Counter.builder("activity.events.resyncs")
+                .description("Subscribers whose buffer overflowed")
+                .register(meterRegistry);
+        this.drops = Counter.builder("activity.events.drops")
+                .description("Subscribers dropped because a send took longer than the send timeout")
+                .register(meterRegistry);
+        Gauge.builder("activity.events.subscribers", subscribers, Set::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param lastEventId the id of the last event a reconnecting client received, {@code null} on a first connection
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        var emitter = new SseEmitter(properties.getTimeout().toMillis());
+        var subscriber = new Subscriber(emitter, properties.getBufferSize());
+
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        if (lastEventId != null) {
+            subscriber.requireResync();
+        }
+
+        return emitter;
+    }
+
+    @EventListener
+    public void onActivityEvent(ActivityEvent event) {
+        subscribers.forEach(subscriber -> subscriber.publish(event));
+    }
+
+    /**
+     * Drops the subscribers whose send has taken longer than the send timeout.
+     */
+    @Scheduled(fixedDelayString = "${activity-manager.events.slow-check-interval:PT1S}")
+    public void dropSlowSubscribers() {
+        var now = System.nanoTime();
+        subscribers.forEach(subscriber -> subscriber.dropIfSlow(now));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (sendExecutor instanceof ThreadPoolTaskExecutor executor) {
+            executor.shutdown();
+        }
+    }
+
+    // Not a bean, which would stop Spring Boot from auto-configuring the applicationTaskExecutor
+    private static ThreadPoolTaskExecutor newSendExecutor(ActivityEventsProperties properties) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("activity-events-");
+        executor.setCorePoolSize(properties.getSendThreads());
+        executor.setMaxPoolSize(properties.getSendThreads());
+        executor.setQueueCapacity(properties.getSendQueueCapacity());
+        executor.initialize();
+        return executor;
+    }
+
+    // Starts or retires a sender thread in place of one that is stuck in a send
+    private void resizeSendPool(int delta) {
+        if (!(sendExecutor instanceof ThreadPoolTaskExecutor executor)) {
+            return;
+        }
+
+        synchronized (executor) {
+            // The core size may never exceed the maximum, so grow the maximum first and shrink it last
+            if (delta > 0) {
+                executor.setMaxPoolSize(executor.getMaxPoolSize() + delta);
+                executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+            } else {
+                executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+                executor.setMaxPoolSize(executor.getMaxPoolSize() + delta);
+            }
+        }
+    }
+
+    private final class Subscriber {
+
+        // Marks a send during which the subscriber was dropped
+        private static final long DROPPED = Long.MIN_VALUE;
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<ActivityEvent> buffer;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean resyncRequired;
+        // System.nanoTime() at which the current send started, 0 when none is in progress
+        private final AtomicLong sendStartedAt = new AtomicLong();
+        private volatile boolean dropped;
+
+        private Subscriber(SseEmitter emitter, int bufferSize) {
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void publish(ActivityEvent event) {
+            if (!buffer.offer(event)) {
+                buffer.clear();
+                resyncRequired = true;
+                resyncs.increment();
+            }
+
+            scheduleDrain();
+        }
+
+        private void requireResync() {
+            resyncRequired = true;
+            scheduleDrain();
+        }
+
+        private void dropIfSlow(long now) {
+            var startedAt = sendStartedAt.get();
+            if (startedAt == 0 || startedAt == DROPPED
+                    || now - startedAt <= properties.getSendTimeout().toNanos()
+                    // Lost to the end of the send, which is then no longer stuck
+                    || !sendStartedAt.compareAndSet(startedAt, DROPPED)) {
+                return;
+            }
+
+            dropped = true;
+            subscribers.remove(this);
+            buffer.clear();
+            drops.increment();
+            resizeSendPool(1);
+        }
+
+        private void scheduleDrain() {
+            if (dropped || !draining.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                sendExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Every sender is busy, the buffer is sent with the next event
+                draining.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!dropped) {
+                    if (resyncRequired) {
+                        resyncRequired = false;
+                        send(ActivityEvent.resync());
+                    }
+
+                    var event = buffer.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the emitter already completed
+                subscribers.remove(this);
+                buffer.clear();
+                return;
+            } finally {
+                draining.set(false);
+            }
+
+            if (dropped) {
+                // The client reconnects and resyncs
+                emitter.complete();
+                return;
+            }
+
+            // An event may have arrived between the last poll and resetting the flag
+            if (!buffer.isEmpty() || resyncRequired) {
+                scheduleDrain();
+            }
+        }
+
+        private void send(ActivityEvent event) throws IOException {
+            var sseEvent = SseEmitter.event()
+                    .name(event.getType().name().toLowerCase())
+                    .data(event);
+
+            if (event.getChangeVersion() != null) {
+                sseEvent.id(event.getChangeVersion().toString());
+            }
+
+            sendStartedAt.set(System.nanoTime());
+            try {
+                emitter.send(sseEvent);
+            } finally {
+                if (sendStartedAt.getAndSet(0) == DROPPED) {
+                    // This thread is free again, so retire the one started in its place
+                    dropped = true;
+                    resizeSendPool(-1);
+                }
+            }
+        }
+    }
+}
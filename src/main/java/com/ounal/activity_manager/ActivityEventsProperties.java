@@ -0,0 +1,24 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.events")
+public class ActivityEventsProperties {
+
+    // Events buffered per subscriber before it is asked to resync
+    private int bufferSize = 256;
+    // Stream lifetime, clients reconnect automatically afterwards
+    private Duration timeout = Duration.ofMinutes(30);
+    // Threads that write events to subscribers, shared by all of them. One is added for each send that is stuck
+    private int sendThreads = 4;
+    // How long a single send may block on a slow client before the subscriber is dropped
+    private Duration sendTimeout = Duration.ofSeconds(5);
+    // How often sends are checked against the send timeout
+    private Duration slowCheckInterval = Duration.ofSeconds(1);
+    // Subscribers waiting for a sender thread, at most one entry each
+    private int sendQueueCapacity = 10_000;
+}
@@ -0,0 +1,17 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityFilter {
+
+    private String type;
+    private Integer minParticipants;
+    private Integer maxParticipants;
+}
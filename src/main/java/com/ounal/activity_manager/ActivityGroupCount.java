@@ -0,0 +1,13 @@
+package com.ounal.activity_manager;
+
+/**
+ * Number of activities with one combination of type and participants.
+ */
+public interface ActivityGroupCount {
+
+    String getType();
+
+    Integer getParticipants();
+
+    long getCount();
+}
@@ -0,0 +1,26 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The single row recording how far the ingest journal has been committed, see {@link ActivityIngestQueue}.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "activity_ingest_checkpoint")
+public class ActivityIngestCheckpoint {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+    @Column(name = "committed_sequence")
+    private Long committedSequence;
+}
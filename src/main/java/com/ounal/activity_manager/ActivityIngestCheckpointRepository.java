@@ -0,0 +1,17 @@
+package com.ounal.activity_manager;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ActivityIngestCheckpointRepository extends JpaRepository<ActivityIngestCheckpoint, Integer> {
+
+    @Query("select c.committedSequence from ActivityIngestCheckpoint c where c.id = " + ActivityIngestCheckpoint.ID)
+    long findCommittedSequence();
+
+    @Modifying
+    @Query("update ActivityIngestCheckpoint c set c.committedSequence = :sequence where c.id = "
+            + ActivityIngestCheckpoint.ID)
+    int updateCommittedSequence(@Param("sequence") long sequence);
+}
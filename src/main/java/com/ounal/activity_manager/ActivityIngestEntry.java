@@ -0,0 +1,21 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One accepted activity, as written to the ingest journal.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityIngestEntry {
+
+    // Increases by one per accepted activity, compared with the committed sequence on recovery
+    private long sequence;
+    private String trackingId;
+    private Activity activity;
+}
@@ -0,0 +1,141 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only file of accepted {@link ActivityIngestEntry entries}, one JSON document per line.
+ * <p>
+ * An entry counts as accepted only once {@link #sync} has forced it to disk. Appends that arrive while a force is
+ * running are covered by the next one, so concurrent requests share the cost of syncing.
+ * Appends and {@link #truncate} must be serialized by the caller.
+ */
+@Slf4j
+class ActivityIngestJournal implements Closeable {
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // Everything before this position is on disk
+    private volatile long syncedPosition;
+
+    ActivityIngestJournal(Path path, ObjectMapper objectMapper) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+
+        var directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads every complete entry and drops a line left half-written by a crash, so later appends start on a line
+     * of their own. Positions the journal for appending.
+     */
+    List<ActivityIngestEntry> recover() throws IOException {
+        var bytes = Files.readAllBytes(path);
+
+        var entries = new ArrayList<ActivityIngestEntry>();
+        var lineStart = 0;
+        for (var i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+
+            try {
+                entries.add(objectMapper.readValue(bytes, lineStart, i - lineStart, ActivityIngestEntry.class));
+            } catch (JacksonException e) {
+                log.warn("Skipping unreadable ingest journal entry: {}",
+                        new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8), e);
+            }
+            lineStart = i + 1;
+        }
+
+        if (lineStart < bytes.length) {
+            log.warn("Dropping {} bytes of an incomplete ingest journal entry", bytes.length - lineStart);
+            channel.truncate(lineStart);
+        }
+        channel.position(lineStart);
+        channel.force(false);
+        syncedPosition = lineStart;
+
+        return entries;
+    }
+
+    /**
+     * Writes the entry without forcing it to disk.
+     *
+     * @return the position to pass to {@link #sync}
+     */
+    long append(ActivityIngestEntry entry) throws IOException {
+        var json = objectMapper.writeValueAsBytes(entry);
+        var line = ByteBuffer.allocate(json.length + 1)
+                .put(json)
+                .put((byte) '\n')
+                .flip();
+
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+        return channel.position();
+    }
+
+    /**
+     * Returns once everything up to the position is on disk.
+     */
+    void sync(long position) throws IOException {
+        if (syncedPosition >= position) {
+            return;
+        }
+
+        syncLock.lock();
+        try {
+            if (syncedPosition >= position) {
+                return;
+            }
+
+            // Everything written before reading the size is covered by this force
+            var size = channel.size();
+            channel.force(false);
+            syncedPosition = size;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Empties the journal, once every entry in it is committed to the database.
+     */
+    void truncate() throws IOException {
+        syncLock.lock();
+        try {
+            channel.truncate(0);
+            channel.force(false);
+            syncedPosition = 0;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
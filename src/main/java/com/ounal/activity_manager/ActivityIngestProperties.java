@@ -0,0 +1,25 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.ingest")
+public class ActivityIngestProperties {
+
+    // When disabled, POST /activities always inserts before answering
+    private boolean enabled = false;
+    // Accepted activities waiting to be written; further requests are answered with 429
+    private int queueCapacity = 10_000;
+    // Maximum number of activities committed in one transaction
+    private int batchSize = 500;
+    // How long the writer waits for a batch to fill up once the first activity has arrived
+    private Duration maxBatchDelay = Duration.ofMillis(5);
+    // Append-only file that keeps accepted activities until they are committed
+    private Path journalPath = Path.of("data", "ingest-journal.ndjson");
+    // Number of tracking ids whose status can still be looked up
+    private int statusRetention = 100_000;
+}
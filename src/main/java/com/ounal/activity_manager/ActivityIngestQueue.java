@@ -0,0 +1,322 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind ingestion for {@code POST /activities}, enabled with {@code activity-manager.ingest.enabled}.
+ * <p>
+ * An accepted activity is appended to a local {@link ActivityIngestJournal journal}, forced to disk and put on a
+ * bounded queue, and the request is answered with a tracking id. A single writer thread drains the queue and commits
+ * each batch in one transaction, together with the journal sequence it completes. On startup, journal entries past
+ * that committed sequence are written before new ones are accepted, so an accepted activity survives a crash and is
+ * inserted exactly once. The journal is emptied whenever the writer has caught up.
+ */
+@Slf4j
+@Component
+public class ActivityIngestQueue {
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+    private static final Duration INITIAL_RETRY_DELAY = Duration.ofMillis(100);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(10);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ActivityService activityService;
+    private final ActivityIngestCheckpointRepository activityIngestCheckpointRepository;
+    private final ActivityIngestProperties properties;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<ActivityIngestEntry> entries;
+    private final Cache<String, ActivityIngestStatus> statuses;
+    private final Timer batchTimer;
+    // Keeps journal order and queue order the same, so a committed sequence covers every entry before it
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private ActivityIngestJournal journal;
+    private long lastSequence;
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public ActivityIngestQueue(ActivityService activityService,
+                               ActivityIngestCheckpointRepository activityIngestCheckpointRepository,
+                               ActivityIngestProperties properties,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry) {
+        this.activityService = activityService;
+        this.activityIngestCheckpointRepository = activityIngestCheckpointRepository;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.entries = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(properties.getStatusRetention())
+                .build();
+
+        this.batchTimer = Timer.builder("activity.ingest.batches")
+                .description("Time to commit one batch of queued activities")
+                .register(meterRegistry);
+        Gauge.builder("activity.ingest.queue.size", entries, BlockingQueue::size)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    // Runs before the web server accepts requests, so recovered entries are committed ahead of new ones
+    @PostConstruct
+    public void start() throws IOException, InterruptedException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        journal = new ActivityIngestJournal(properties.getJournalPath(), objectMapper);
+        var committedSequence = activityIngestCheckpointRepository.findCommittedSequence();
+
+        var recovered = journal.recover().stream()
+                .filter(entry -> entry.getSequence() > committedSequence)
+                .sorted(Comparator.comparingLong(ActivityIngestEntry::getSequence))
+                .toList();
+        lastSequence = recovered.isEmpty()
+                ? committedSequence
+                : recovered.get(recovered.size() - 1).getSequence();
+
+        if (!recovered.isEmpty()) {
+            log.info("Recovering {} ingested activities from the journal", recovered.size());
+            for (var i = 0; i < recovered.size(); i += properties.getBatchSize()) {
+                write(recovered.subList(i, Math.min(i + properties.getBatchSize(), recovered.size())));
+            }
+        }
+
+        running = true;
+        writer = new Thread(this::drain, "activity-ingest-writer");
+        writer.start();
+    }
+
+    /**
+     * Accepts the activity for writing. Returns once it is in the journal on disk.
+     *
+     * @throws ActivityIngestQueueFullException if the writer is too far behind
+     */
+    public ActivityIngestStatus submit(Activity activity) {
+        var entry = ActivityIngestEntry.builder()
+                .trackingId(UUID.randomUUID().toString())
+                .activity(activity)
+                .build();
+
+        long position;
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("The ingest queue is not running");
+            }
+            if (entries.remainingCapacity() == 0) {
+                throw new ActivityIngestQueueFullException();
+            }
+
+            entry.setSequence(lastSequence + 1);
+            position = journal.append(entry);
+            lastSequence = entry.getSequence();
+            // Recorded before the writer can see the entry, so it cannot overwrite a later status
+            statuses.put(entry.getTrackingId(), queuedStatus(entry));
+            // Cannot fail, the writer only ever takes entries out
+            entries.add(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+
+        try {
+            journal.sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return queuedStatus(entry);
+    }
+
+    public Optional<ActivityIngestStatus> getStatus(String trackingId) {
+        return Optional.ofNullable(statuses.getIfPresent(trackingId));
+    }
+
+    /**
+     * Stops accepting activities and waits for the queued ones to be committed.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (writer == null) {
+            return;
+        }
+
+        appendLock.lock();
+        try {
+            running = false;
+        } finally {
+            appendLock.unlock();
+        }
+
+        writer.join(SHUTDOWN_TIMEOUT.toMillis());
+        if (writer.isAlive()) {
+            log.warn("{} ingested activities are still queued, they are replayed from the journal on restart",
+                    entries.size());
+            writer.interrupt();
+        }
+        journal.close();
+    }
+
+    private void drain() {
+        var batch = new ArrayList<ActivityIngestEntry>(properties.getBatchSize());
+        try {
+            while (running || !entries.isEmpty()) {
+                var first = entries.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+
+                var sample = Timer.start();
+                write(batch);
+                sample.stop(batchTimer);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits briefly for more entries, so a burst is committed as a few large transactions
+    private void fillBatch(List<ActivityIngestEntry> batch) throws InterruptedException {
+        var deadline = System.nanoTime() + properties.getMaxBatchDelay().toNanos();
+        while (batch.size() < properties.getBatchSize()) {
+            entries.drainTo(batch, properties.getBatchSize() - batch.size());
+
+            var remaining = deadline - System.nanoTime();
+            if (batch.size() >= properties.getBatchSize() || remaining <= 0) {
+                return;
+            }
+
+            var next = entries.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Commits the batch, retrying until the database is reachable again. If the database rejects an activity,
+     * the entries are committed one by one and only the rejected ones are marked as failed.
+     */
+    private void write(List<ActivityIngestEntry> batch) throws InterruptedException {
+        var retryDelay = INITIAL_RETRY_DELAY;
+        while (true) {
+            try {
+                commit(batch);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (batch.size() > 1) {
+                    for (var entry : batch) {
+                        write(List.of(entry));
+                    }
+                } else {
+                    skip(batch.get(0), e);
+                }
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Could not write {} ingested activities, retrying in {}", batch.size(), retryDelay, e);
+                Thread.sleep(retryDelay.toMillis());
+                retryDelay = nextRetryDelay(retryDelay);
+            }
+        }
+    }
+
+    private void commit(List<ActivityIngestEntry> batch) {
+        var sequence = batch.get(batch.size() - 1).getSequence();
+        var activities = activityService.createIngestedActivities(batch.stream()
+                .map(ActivityIngestEntry::getActivity)
+                .toList(), sequence);
+
+        for (var i = 0; i < batch.size(); i++) {
+            var trackingId = batch.get(i).getTrackingId();
+            statuses.put(trackingId, ActivityIngestStatus.builder()
+                    .trackingId(trackingId)
+                    .status(ActivityIngestStatus.Status.CREATED)
+                    .activityId(activities.get(i).getId())
+                    .build());
+        }
+        committed(sequence);
+    }
+
+    // Moves the checkpoint past an activity the database will never accept, so it is not replayed either
+    private void skip(ActivityIngestEntry entry, DataIntegrityViolationException cause) throws InterruptedException {
+        log.warn("Dropping ingested activity {}, the database rejected it", entry.getTrackingId(), cause);
+
+        var retryDelay = INITIAL_RETRY_DELAY;
+        while (true) {
+            try {
+                activityService.createIngestedActivities(List.of(), entry.getSequence());
+                break;
+            } catch (RuntimeException e) {
+                log.warn("Could not skip ingested activity {}, retrying in {}", entry.getTrackingId(), retryDelay, e);
+                Thread.sleep(retryDelay.toMillis());
+                retryDelay = nextRetryDelay(retryDelay);
+            }
+        }
+
+        statuses.put(entry.getTrackingId(), ActivityIngestStatus.builder()
+                .trackingId(entry.getTrackingId())
+                .status(ActivityIngestStatus.Status.FAILED)
+                .error(cause.getMostSpecificCause().getMessage())
+                .build());
+        committed(entry.getSequence());
+    }
+
+    private void committed(long sequence) {
+        appendLock.lock();
+        try {
+            if (lastSequence == sequence) {
+                journal.truncate();
+            }
+        } catch (IOException e) {
+            // Harmless, the committed entries are skipped on recovery
+            log.warn("Could not truncate the ingest journal", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static Duration nextRetryDelay(Duration retryDelay) {
+        var doubled = retryDelay.multipliedBy(2);
+        return doubled.compareTo(MAX_RETRY_DELAY) < 0 ? doubled : MAX_RETRY_DELAY;
+    }
+
+    private static ActivityIngestStatus queuedStatus(ActivityIngestEntry entry) {
+        return ActivityIngestStatus.builder()
+                .trackingId(entry.getTrackingId())
+                .status(ActivityIngestStatus.Status.QUEUED)
+                .build();
+    }
+}
@@ -0,0 +1,12 @@
+package com.ounal.activity_manager;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class ActivityIngestQueueFullException extends RuntimeException {
+
+    public ActivityIngestQueueFullException() {
+        super("The ingest queue is full, retry later");
+    }
+}
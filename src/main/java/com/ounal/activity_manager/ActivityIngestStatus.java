@@ -0,0 +1,29 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What happened to an activity accepted by {@link ActivityIngestQueue}, looked up by its tracking id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityIngestStatus {
+
+    public enum Status {
+        QUEUED,
+        CREATED,
+        // Rejected by the database, e.g. a value too long for its column
+        FAILED
+    }
+
+    private String trackingId;
+    private Status status;
+    // Set once the activity is created
+    private Long activityId;
+    private String error;
+}
@@ -2,8 +2,10 @@ package com.ounal.activity_manager;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class ActivityManagerApplication {
 
 	public static void main(String[] args) {
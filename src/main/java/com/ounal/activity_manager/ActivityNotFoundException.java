@@ -0,0 +1,12 @@
+package com.ounal.activity_manager;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class ActivityNotFoundException extends RuntimeException {
+
+    public ActivityNotFoundException(Long id) {
+        super("Activity " + id + " not found");
+    }
+}
@@ -0,0 +1,19 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityPage {
+
+    private List<Activity> items;
+    // Id to pass as "after" to fetch the next page, null when this is the last page
+    private Long nextCursor;
+}
@@ -0,0 +1,70 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes to an activity in JSON Merge Patch (RFC 7396) form: a member replaces the attribute, a null member clears
+ * it, and attributes without a member are left alone.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityPatch {
+
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    // Attribute name to new value, null values included
+    @Builder.Default
+    private Map<String, Object> changes = new LinkedHashMap<>();
+
+    /**
+     * @throws InvalidActivityPatchException if the document is not an object, or has a member that is not a
+     *                                       patchable attribute of the right type
+     */
+    public static ActivityPatch fromJson(JsonNode document) {
+        if (document == null || !document.isObject()) {
+            throw new InvalidActivityPatchException("A merge patch must be a JSON object");
+        }
+
+        var changes = new LinkedHashMap<String, Object>();
+        document.fields().forEachRemaining(member -> {
+            var name = member.getKey();
+            var value = member.getValue();
+
+            changes.put(name, switch (name) {
+                case "name", "type" -> {
+                    if (!value.isNull() && !value.isTextual()) {
+                        throw new InvalidActivityPatchException(name + " must be a string or null");
+                    }
+                    yield value.isNull() ? null : value.textValue();
+                }
+                case "participants" -> {
+                    if (!value.isNull() && !(value.isIntegralNumber() && value.canConvertToInt())) {
+                        throw new InvalidActivityPatchException(name + " must be an integer or null");
+                    }
+                    yield value.isNull() ? null : value.intValue();
+                }
+                default -> throw new InvalidActivityPatchException(name + " cannot be patched");
+            });
+        });
+
+        return new ActivityPatch(changes);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    // Whether the patch can move the activity to another group of the stats
+    public boolean changesStats() {
+        return changes.containsKey("type") || changes.containsKey("participants");
+    }
+}
@@ -0,0 +1,12 @@
+package com.ounal.activity_manager;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class ActivityPreconditionFailedException extends RuntimeException {
+
+    public ActivityPreconditionFailedException(Long id) {
+        super("Activity " + id + " has been changed since it was read");
+    }
+}
@@ -1,7 +1,178 @@
 package com.ounal.activity_manager;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-public interface ActivityRepository extends JpaRepository<Activity, Long> {
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+public interface ActivityRepository extends JpaRepository<Activity, Long>, ActivityRepositoryCustom {
+
+    int EXPORT_FETCH_SIZE = 500;
+
+    /**
+     * Keyset page of activities with an id greater than {@code after}, in id order, walking the primary key.
+     * Participant bounds that are {@code null} are ignored.
+     */
+    @Query("""
+            select a from Activity a
+            where a.id > :after
+              and (:minParticipants is null or a.participants >= :minParticipants)
+              and (:maxParticipants is null or a.participants <= :maxParticipants)
+            order by a.id
+            """)
+    List<Activity> findPage(@Param("after") long after,
+                            @Param("minParticipants") Integer minParticipants,
+                            @Param("maxParticipants") Integer maxParticipants,
+                            Limit limit);
+
+    /**
+     * Like {@link #findPage}, restricted to one type and served by {@code idx_activities_type_id_participants}.
+     */
+    @Query("""
+            select a from Activity a
+            where a.type = :type
+              and a.id > :after
+              and (:minParticipants is null or a.participants >= :minParticipants)
+              and (:maxParticipants is null or a.participants <= :maxParticipants)
+            order by a.id
+            """)
+    List<Activity> findPageByType(@Param("after") long after,
+                                  @Param("type") String type,
+                                  @Param("minParticipants") Integer minParticipants,
+                                  @Param("maxParticipants") Integer maxParticipants,
+                                  Limit limit);
+
+    /**
+     * Served by {@code idx_activities_name_id}.
+     */
+    List<Activity> findByNameStartingWithOrderByNameAscIdAsc(String prefix, Limit limit);
+
+    /**
+     * Streams every activity in id order. Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + ActivityRepository.EXPORT_FETCH_SIZE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select a from Activity a order by a.id")
+    Stream<Activity> streamAll();
+
+    /**
+     * Replaces an activity in one statement, without loading it first.
+     * With an {@code expectedVersion}, only updates the row if it is still at that version.
+     *
+     * @return the number of rows updated, 0 if the activity does not exist or is at another version
+     */
+    @Modifying
+    @Query("""
+            update Activity a
+            set a.name = :name,
+                a.type = :type,
+                a.participants = :participants,
+                a.changeVersion = :changeVersion,
+                a.version = a.version + 1
+            where a.id = :id
+              and (:expectedVersion is null or a.version = :expectedVersion)
+            """)
+    int updateById(@Param("id") Long id,
+                   @Param("name") String name,
+                   @Param("type") String type,
+                   @Param("participants") Integer participants,
+                   @Param("changeVersion") long changeVersion,
+                   @Param("expectedVersion") Long expectedVersion);
+
+    /**
+     * Deletes an activity in one statement, where {@link #deleteById} would load it first.
+     *
+     * @return 1 if the activity was deleted, 0 if it did not exist
+     */
+    @Modifying
+    @Query("delete from Activity a where a.id = :id")
+    int removeById(@Param("id") Long id);
+
+    /**
+     * Deletes the activities of the given type that {@link ActivityTombstoneRepository#addTombstonesByType} recorded
+     * under {@code changeVersion}, so every deleted row has a tombstone.
+     *
+     * @return the number of activities deleted
+     */
+    @Modifying
+    @Query("""
+            delete from Activity a
+            where a.type = :type
+              and a.id in (select t.activityId from ActivityTombstone t where t.changeVersion = :changeVersion)
+            """)
+    int removeTombstonedByType(@Param("type") String type, @Param("changeVersion") long changeVersion);
+
+    /**
+     * Locks the activity's row until the end of the transaction, so the values a write replaces can be taken out of
+     * the stats without another write changing them in between.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            select new com.ounal.activity_manager.ActivitySummaryRow(a.id, a.type, a.participants, a.version)
+            from Activity a
+            where a.id = :id
+            """)
+    Optional<ActivitySummaryRow> findSummaryById(@Param("id") Long id);
+
+    /**
+     * Like {@link #findSummaryById}, for every existing activity among the ids.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            select new com.ounal.activity_manager.ActivitySummaryRow(a.id, a.type, a.participants, a.version)
+            from Activity a
+            where a.id in :ids
+            """)
+    List<ActivitySummaryRow> findSummariesByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * Locks the activities of the given type and returns their participants, one per row, so a delete by type can
+     * take exactly those rows out of the stats.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a.participants from Activity a where a.type = :type")
+    List<Integer> findParticipantsByType(@Param("type") String type);
+
+    @Query("select a.version from Activity a where a.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("""
+            select a.type as type, a.participants as participants, count(a) as count
+            from Activity a
+            group by a.type, a.participants
+            """)
+    List<ActivityGroupCount> countByTypeAndParticipants();
+
+    @Query("select coalesce(max(a.changeVersion), 0) from Activity a")
+    long findMaxChangeVersion();
+
+    /**
+     * Keyset page of the activities changed up to {@code upTo}, after the change {@code (afterVersion, afterId)},
+     * in change order. One change version can cover many rows, so the page is bounded by rows, not versions.
+     * Start with {@code afterId = Long.MAX_VALUE} to take every change after {@code afterVersion}.
+     */
+    @Query("""
+            select a from Activity a
+            where a.changeVersion <= :upTo
+              and (a.changeVersion > :afterVersion or (a.changeVersion = :afterVersion and a.id > :afterId))
+            order by a.changeVersion, a.id
+            """)
+    List<Activity> findChangesAfter(@Param("afterVersion") long afterVersion,
+                                    @Param("afterId") long afterId,
+                                    @Param("upTo") long upTo,
+                                    Limit limit);
 }
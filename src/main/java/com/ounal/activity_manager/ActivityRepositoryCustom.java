@@ -0,0 +1,15 @@
+package com.ounal.activity_manager;
+
+/**
+ * Queries that Spring Data cannot derive, implemented in {@link ActivityRepositoryCustomImpl}.
+ */
+public interface ActivityRepositoryCustom {
+
+    /**
+     * Sets only the attributes in the patch, in one UPDATE statement built for exactly those columns.
+     * With an {@code expectedVersion}, only updates the row if it is still at that version.
+     *
+     * @return the number of rows updated, 0 if the activity does not exist or is at another version
+     */
+    int patchById(Long id, ActivityPatch patch, long changeVersion, Long expectedVersion);
+}
@@ -0,0 +1,35 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+
+class ActivityRepositoryCustomImpl implements ActivityRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    @Autowired
+    ActivityRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public int patchById(Long id, ActivityPatch patch, long changeVersion, Long expectedVersion) {
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var update = criteriaBuilder.createCriteriaUpdate(Activity.class);
+        var activity = update.from(Activity.class);
+
+        // Typed as Object, so a null value binds as a plain value instead of matching the Expression overload
+        patch.getChanges().forEach((attribute, value) -> update.set(activity.<Object>get(attribute), value));
+
+        var version = activity.<Long>get("version");
+        update.set(activity.<Long>get("changeVersion"), changeVersion);
+        update.set(version, criteriaBuilder.sum(version, 1L));
+
+        var idMatches = criteriaBuilder.equal(activity.get("id"), id);
+        update.where(expectedVersion == null
+                ? idMatches
+                : criteriaBuilder.and(idMatches, criteriaBuilder.equal(version, expectedVersion)));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+}
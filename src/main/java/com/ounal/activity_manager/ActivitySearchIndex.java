@@ -0,0 +1,280 @@
+package com.ounal.activity_manager;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory Lucene index over activity names, for ranked full-text search that tolerates prefixes and typos.
+ * <p>
+ * The database stays the source of truth. The index is built on startup and then follows the change-version feed
+ * through {@link ChangeFeedReader}: every write event schedules a catch-up that applies the upserts and tombstones
+ * since the last indexed version. A search that finds the index behind catches up first, so clients
+ * always find their own committed writes.
+ */
+@Component
+public class ActivitySearchIndex {
+
+    static final String ID = "id";
+    static final String NAME = "name";
+    static final String TYPE = "type";
+    static final String PARTICIPANTS = "participants";
+    static final String CHANGE_VERSION = "changeVersion";
+    static final String VERSION = "version";
+
+    // Ranks exact words above prefixes, and prefixes above typos
+    private static final float EXACT_BOOST = 4;
+    private static final float PREFIX_BOOST = 2;
+    private static final long NOT_BUILT = -1;
+
+    private final ActivityRepository activityRepository;
+    private final ChangeFeedReader changeFeedReader;
+    private final ChangeVersionTracker changeVersionTracker;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ChangeFeedReader.CatchUp scheduledCatchUp;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter indexWriter;
+    private final SearcherManager searcherManager;
+    private final ReentrantLock catchUpLock = new ReentrantLock();
+    private volatile long indexedVersion = NOT_BUILT;
+
+    @Autowired
+    public ActivitySearchIndex(ActivityRepository activityRepository,
+                               ChangeFeedReader changeFeedReader,
+                               ChangeVersionTracker changeVersionTracker,
+                               EntityManager entityManager,
+                               PlatformTransactionManager transactionManager) throws IOException {
+        this.activityRepository = activityRepository;
+        this.changeFeedReader = changeFeedReader;
+        this.changeVersionTracker = changeVersionTracker;
+        this.entityManager = entityManager;
+        this.scheduledCatchUp = changeFeedReader.newCatchUp("activity search index", this::catchUp);
+
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+
+        this.indexWriter = new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(indexWriter, null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduledCatchUp.schedule();
+    }
+
+    @EventListener
+    public void onActivityEvent(ActivityEvent event) {
+        scheduledCatchUp.schedule();
+    }
+
+    /**
+     * Activities whose name contains every word of the query, best match first.
+     * Each word matches exactly, as a prefix, or with up to two typos depending on its length.
+     */
+    public List<Activity> search(String text, int limit) {
+        if (indexedVersion < changeVersionTracker.getSafeVersion()) {
+            catchUp();
+        }
+
+        var query = buildQuery(text);
+        if (query == null) {
+            return List.of();
+        }
+
+        try {
+            var searcher = searcherManager.acquire();
+            try {
+                var topDocs = searcher.search(query, limit);
+                var storedFields = searcher.storedFields();
+
+                var activities = new ArrayList<Activity>(topDocs.scoreDocs.length);
+                for (var scoreDoc : topDocs.scoreDocs) {
+                    activities.add(toActivity(storedFields.document(scoreDoc.doc)));
+                }
+                return activities;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Brings the index up to the tracker's safe version. Builds it from scratch the first time.
+     */
+    void catchUp() {
+        catchUpLock.lock();
+        try {
+            var upTo = changeVersionTracker.getSafeVersion();
+            if (indexedVersion == upTo) {
+                return;
+            }
+
+            if (indexedVersion == NOT_BUILT) {
+                rebuild();
+            } else {
+                changeFeedReader.readChanges(indexedVersion, upTo, this::index, this::unindex);
+            }
+
+            searcherManager.maybeRefreshBlocking();
+            indexedVersion = upTo;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            catchUpLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        indexWriter.close();
+    }
+
+    // Rows changed while streaming are written again by the next catch-up, which is harmless
+    private void rebuild() throws IOException {
+        indexWriter.deleteAll();
+
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (var activities = activityRepository.streamAll()) {
+                activities.forEach(activity -> {
+                    index(activity);
+                    entityManager.detach(activity);
+                });
+            }
+        });
+    }
+
+    private void index(Activity activity) {
+        try {
+            indexWriter.updateDocument(new Term(ID, activity.getId().toString()), toDocument(activity));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void unindex(long id) {
+        try {
+            indexWriter.deleteDocuments(new Term(ID, Long.toString(id)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Query buildQuery(String text) {
+        var words = analyze(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        var query = new BooleanQuery.Builder();
+        for (var word : words) {
+            var term = new Term(NAME, word);
+            var wordQuery = new BooleanQuery.Builder()
+                    .add(new BoostQuery(new TermQuery(term), EXACT_BOOST), BooleanClause.Occur.SHOULD)
+                    .add(new BoostQuery(new PrefixQuery(term), PREFIX_BOOST), BooleanClause.Occur.SHOULD);
+
+            var maxEdits = maxEdits(word);
+            if (maxEdits > 0) {
+                // The first letter must match, which keeps the number of candidate terms small
+                wordQuery.add(new FuzzyQuery(term, maxEdits, 1), BooleanClause.Occur.SHOULD);
+            }
+
+            query.add(wordQuery.build(), BooleanClause.Occur.MUST);
+        }
+        return query.build();
+    }
+
+    private List<String> analyze(String text) {
+        var words = new ArrayList<String>();
+        try (var tokenStream = analyzer.tokenStream(NAME, text)) {
+            var termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                words.add(termAttribute.toString());
+            }
+            tokenStream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return words;
+    }
+
+    // Short words would match too much with a typo allowed
+    private static int maxEdits(String word) {
+        if (word.length() < 3) {
+            return 0;
+        }
+        return word.length() < 6 ? 1 : 2;
+    }
+
+    private static Document toDocument(Activity activity) {
+        var document = new Document();
+        document.add(new StringField(ID, activity.getId().toString(), Field.Store.YES));
+        if (activity.getName() != null) {
+            document.add(new TextField(NAME, activity.getName(), Field.Store.YES));
+        }
+        if (activity.getType() != null) {
+            document.add(new StoredField(TYPE, activity.getType()));
+        }
+        if (activity.getParticipants() != null) {
+            document.add(new StoredField(PARTICIPANTS, activity.getParticipants()));
+        }
+        if (activity.getChangeVersion() != null) {
+            document.add(new StoredField(CHANGE_VERSION, activity.getChangeVersion()));
+        }
+        // Returned with the results, so they can be updated with If-Match
+        if (activity.getVersion() != null) {
+            document.add(new StoredField(VERSION, activity.getVersion()));
+        }
+        return document;
+    }
+
+    private static Activity toActivity(Document document) {
+        var participants = document.getField(PARTICIPANTS);
+        var changeVersion = document.getField(CHANGE_VERSION);
+        var version = document.getField(VERSION);
+
+        return Activity.builder()
+                .id(Long.valueOf(document.get(ID)))
+                .name(document.get(NAME))
+                .type(document.get(TYPE))
+                .participants(participants == null ? null : participants.numericValue().intValue())
+                .changeVersion(changeVersion == null ? null : changeVersion.numericValue().longValue())
+                .version(version == null ? null : version.numericValue().longValue())
+                .build();
+    }
+}
@@ -1,60 +1,710 @@
 package com.ounal.activity_manager;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
+// Times every public method as activity.service, tagged with class, method and exception
+@Timed(ActivityService.SERVICE_TIMER)
 public class ActivityService {
 
     public static final String BORED_API_GET_RANDOM_ACTIVITY_URL = "https://bored-api.appbrewery.com/random";
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int BATCH_CHUNK_SIZE = 1000;
+    public static final String ACTIVITY_CACHE = "activities";
+    public static final String ACTIVITY_PAGE_CACHE = "activityPages";
+    public static final String SERVICE_TIMER = "activity.service";
 
     private final ActivityRepository activityRepository;
-    private final RestTemplate restTemplate;
+    private final ActivityTombstoneRepository activityTombstoneRepository;
+    private final ChangeVersionTracker changeVersionTracker;
+    private final RandomActivityPool randomActivityPool;
+    private final ActivitySearchIndex activitySearchIndex;
+    private final ActivitySnapshotStore activitySnapshotStore;
+    private final ActivityStatsCounters activityStatsCounters;
+    private final ActivityIngestCheckpointRepository activityIngestCheckpointRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    // Concurrent random requests share one upstream fetch round and one insert
+    private final RequestCoalescer<Activity> randomActivityCoalescer;
+    // Bumped after every write, used for ETags. The instance id keeps tags from different processes apart.
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong tableVersion = new AtomicLong();
 
     @Autowired
-    public ActivityService(ActivityRepository activityRepository, RestTemplate restTemplate) {
+    public ActivityService(ActivityRepository activityRepository,
+                           ActivityTombstoneRepository activityTombstoneRepository,
+                           ChangeVersionTracker changeVersionTracker,
+                           RandomActivityPool randomActivityPool,
+                           ActivitySearchIndex activitySearchIndex,
+                           ActivitySnapshotStore activitySnapshotStore,
+                           ActivityStatsCounters activityStatsCounters,
+                           ActivityIngestCheckpointRepository activityIngestCheckpointRepository,
+                           EntityManager entityManager,
+                           TransactionTemplate transactionTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           RandomActivityPoolProperties randomActivityPoolProperties) {
         this.activityRepository = activityRepository;
-        this.restTemplate = restTemplate;
+        this.activityTombstoneRepository = activityTombstoneRepository;
+        this.changeVersionTracker = changeVersionTracker;
+        this.randomActivityPool = randomActivityPool;
+        this.activitySearchIndex = activitySearchIndex;
+        this.activitySnapshotStore = activitySnapshotStore;
+        this.activityStatsCounters = activityStatsCounters;
+        this.activityIngestCheckpointRepository = activityIngestCheckpointRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.randomActivityCoalescer = new RequestCoalescer<>(randomActivityPoolProperties.getCoalesceWindow(),
+                randomActivityPoolProperties.getMaxCoalescedRequests(),
+                this::createRandomActivities);
     }
 
+    @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
     public Activity createActivity(Activity activity) {
-        return activityRepository.save(activity);
+        var savedActivity = saveWithChangeVersion(activity);
+        activityStatsCounters.added(savedActivity, savedActivity.getChangeVersion());
+        afterWrite(ActivityEvent.created(savedActivity));
+
+        return savedActivity;
     }
 
+    /**
+     * Creates an activity from the Bored API, or returns null if none is available.
+     * Calls arriving while another is in flight are served together, see {@link RequestCoalescer}.
+     */
+    @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
     public Activity createRandomActivity() {
-        var activityDto = restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class);
-        if (activityDto == null) {
-            return null;
+        return randomActivityCoalescer.call();
+    }
+
+    /**
+     * Tag that changes whenever activities are written through this service.
+     * Read it before loading data, so a concurrent write can only make the tag older than the data.
+     */
+    public String getTableVersionTag() {
+        return instanceId + "-" + tableVersion.get();
+    }
+
+    /**
+     * The activity's current version, read without loading the activity.
+     *
+     * @throws ActivityNotFoundException if there is no activity with the id
+     */
+    public long getActivityVersion(Long id) {
+        return activityRepository.findVersionById(id)
+                .orElseThrow(() -> new ActivityNotFoundException(id));
+    }
+
+    @Cacheable(cacheNames = ACTIVITY_CACHE, key = "#id")
+    public Activity getActivity(Long id) {
+        if (activitySnapshotStore.isAvailable()) {
+            return activitySnapshotStore.getActivity(id)
+                    .orElseThrow(() -> new ActivityNotFoundException(id));
+        }
+
+        return activityRepository.findById(id)
+                .orElseThrow(() -> new ActivityNotFoundException(id));
+    }
+
+    /**
+     * The {@code tableVersionTag} is only part of the cache key. Pass the tag read before the request's other work:
+     * a page loaded before a write is then cached under the older tag, and never served under a newer one.
+     */
+    @Cacheable(cacheNames = ACTIVITY_PAGE_CACHE, key = "{#tableVersionTag, #after, #limit, #filter}")
+    public ActivityPage getActivities(Long after, int limit, ActivityFilter filter, String tableVersionTag) {
+        var pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        var cursor = after == null ? 0L : after;
+
+        if (activitySnapshotStore.isAvailable()) {
+            return activitySnapshotStore.getActivities(cursor, pageSize, filter);
+        }
+
+        // Fetch one extra row to find out whether there is a next page
+        var activities = filter.getType() == null
+                ? activityRepository.findPage(cursor,
+                        filter.getMinParticipants(),
+                        filter.getMaxParticipants(),
+                        Limit.of(pageSize + 1))
+                : activityRepository.findPageByType(cursor,
+                        filter.getType(),
+                        filter.getMinParticipants(),
+                        filter.getMaxParticipants(),
+                        Limit.of(pageSize + 1));
+
+        if (activities.size() <= pageSize) {
+            return new ActivityPage(activities, null);
         }
 
-        var activity = convertActivityDtoToEntity(activityDto);
+        var items = new ArrayList<>(activities.subList(0, pageSize));
+
+        return new ActivityPage(items, items.get(pageSize - 1).getId());
+    }
+
+    /**
+     * Activities whose name starts with the given prefix, in name order.
+     */
+    public List<Activity> getActivitiesByNamePrefix(String prefix, int limit) {
+        var pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        return activityRepository.findByNameStartingWithOrderByNameAscIdAsc(prefix, Limit.of(pageSize));
+    }
+
+    /**
+     * Activities whose name matches the words of the query, best match first, see {@link ActivitySearchIndex}.
+     */
+    public List<Activity> searchActivities(String query, int limit) {
+        var pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        return activitySearchIndex.search(query, pageSize);
+    }
+
+    public ActivityStats getStats() {
+        return activityStatsCounters.getStats();
+    }
+
+    /**
+     * Up to {@code limit} activities created, updated or deleted after the given change, in change order.
+     * A change is identified by its version and the activity id, since a batch write shares one version. Without
+     * {@code after}, starts after every change of version {@code since}.
+     */
+    public ActivityChanges getChanges(long since, Long after, int limit) {
+        var pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        var upTo = changeVersionTracker.getSafeVersion();
+        // With a cursor, the rest of version since may still be to come even when nothing newer is safe
+        if (upTo < since || upTo == since && after == null) {
+            return new ActivityChanges(List.of(), List.of(), since, null);
+        }
+
+        var afterId = after == null ? Long.MAX_VALUE : after;
+        // One more than the page, to know whether the page is the last
+        var changed = activityRepository.findChangesAfter(since, afterId, upTo, Limit.of(pageSize + 1));
+        var deleted = activityTombstoneRepository.findTombstonesAfter(since, afterId, upTo, Limit.of(pageSize + 1));
+
+        var upserts = new ArrayList<Activity>();
+        var deletions = new ArrayList<Long>();
+        var nextChanged = 0;
+        var nextDeleted = 0;
+        var version = since;
+        var id = afterId;
+        while (upserts.size() + deletions.size() < pageSize
+                && (nextChanged < changed.size() || nextDeleted < deleted.size())) {
+            if (nextDeleted == deleted.size()
+                    || nextChanged < changed.size() && comesFirst(changed.get(nextChanged), deleted.get(nextDeleted))) {
+                var activity = changed.get(nextChanged++);
+                upserts.add(activity);
+                version = activity.getChangeVersion();
+                id = activity.getId();
+            } else {
+                var tombstone = deleted.get(nextDeleted++);
+                deletions.add(tombstone.getActivityId());
+                version = tombstone.getChangeVersion();
+                id = tombstone.getActivityId();
+            }
+        }
 
-        return activityRepository.save(activity);
+        if (nextChanged < changed.size() || nextDeleted < deleted.size()) {
+            return new ActivityChanges(upserts, deletions, version, id);
+        }
+        return new ActivityChanges(upserts, deletions, upTo, null);
     }
 
-    public List<Activity> getAllActivities() {
-        return activityRepository.findAll();
+    /**
+     * Passes every activity to the consumer as it is read from the database.
+     * Each activity is detached after use, so memory stays constant regardless of table size.
+     */
+    @Transactional(readOnly = true)
+    public void exportActivities(Consumer<Activity> consumer) {
+        try (var activities = activityRepository.streamAll()) {
+            activities.forEach(activity -> {
+                consumer.accept(activity);
+                entityManager.detach(activity);
+            });
+        }
     }
 
-    public Activity updateActivity(Long id, Activity updatedActivity) {
-        var activityOptional = activityRepository.findById(id);
-        if (activityOptional.isEmpty()) {
-            return null;
+    /**
+     * Replaces the activity with a single UPDATE statement, after a locking read of only the columns the stats are
+     * counted by, so they can be moved from the replaced values.
+     *
+     * @param expectedVersion if not {@code null}, the version the caller last read
+     * @throws ActivityNotFoundException if there is no activity with the id
+     * @throws ActivityPreconditionFailedException if the activity is no longer at {@code expectedVersion}
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ACTIVITY_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
+    })
+    public Activity updateActivity(Long id, Activity updatedActivity, Long expectedVersion) {
+        var changeVersion = changeVersionTracker.begin();
+        ActivitySummary previous;
+        try {
+            previous = Objects.requireNonNull(transactionTemplate.execute(status -> {
+                var summary = activityRepository.findSummaryById(id)
+                        .orElseThrow(() -> new ActivityNotFoundException(id));
+                if (expectedVersion != null && !expectedVersion.equals(summary.getVersion())) {
+                    throw new ActivityPreconditionFailedException(id);
+                }
+
+                // The row is locked, so the update finds it at the version that was read
+                activityRepository.updateById(id,
+                        updatedActivity.getName(),
+                        updatedActivity.getType(),
+                        updatedActivity.getParticipants(),
+                        changeVersion,
+                        expectedVersion);
+                return summary;
+            }));
+        } finally {
+            changeVersionTracker.end(changeVersion);
         }
 
         updatedActivity.setId(id);
+        updatedActivity.setChangeVersion(changeVersion);
+        updatedActivity.setVersion(previous.getVersion() + 1);
 
-        return activityRepository.save(updatedActivity);
+        activityStatsCounters.removed(previous, changeVersion);
+        activityStatsCounters.added(updatedActivity, changeVersion);
+        afterWrite(ActivityEvent.updated(updatedActivity));
+
+        return updatedActivity;
     }
 
-    public void deleteActivity(Long id) {
-        activityRepository.deleteById(id);
+    /**
+     * Applies a merge patch with an UPDATE of only the patched columns, then reads the activity back.
+     * A patch of a stats column first takes a locking read of the values it replaces, to move the stats by.
+     * An empty patch writes nothing.
+     *
+     * @param expectedVersion if not {@code null}, the version the caller last read
+     * @throws ActivityNotFoundException if there is no activity with the id
+     * @throws ActivityPreconditionFailedException if the activity is no longer at {@code expectedVersion}
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ACTIVITY_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
+    })
+    public Activity patchActivity(Long id, ActivityPatch patch, Long expectedVersion) {
+        if (patch.isEmpty()) {
+            var activity = getActivity(id);
+            if (expectedVersion != null && !expectedVersion.equals(activity.getVersion())) {
+                throw new ActivityPreconditionFailedException(id);
+            }
+            return activity;
+        }
+
+        var changeVersion = changeVersionTracker.begin();
+        var replaced = new ArrayList<ActivitySummary>(1);
+        Activity patchedActivity;
+        try {
+            patchedActivity = transactionTemplate.execute(status -> {
+                if (patch.changesStats()) {
+                    replaced.add(activityRepository.findSummaryById(id)
+                            .orElseThrow(() -> new ActivityNotFoundException(id)));
+                }
+                if (activityRepository.patchById(id, patch, changeVersion, expectedVersion) == 0) {
+                    if (expectedVersion != null && activityRepository.existsById(id)) {
+                        throw new ActivityPreconditionFailedException(id);
+                    }
+                    throw new ActivityNotFoundException(id);
+                }
+
+                // Read in the same transaction, while the UPDATE's row lock keeps other writers out
+                return activityRepository.findById(id)
+                        .orElseThrow(() -> new ActivityNotFoundException(id));
+            });
+        } finally {
+            changeVersionTracker.end(changeVersion);
+        }
+
+        replaced.forEach(previous -> {
+            activityStatsCounters.removed(previous, changeVersion);
+            activityStatsCounters.added(patchedActivity, changeVersion);
+        });
+        afterWrite(ActivityEvent.updated(patchedActivity));
+
+        return patchedActivity;
+    }
+
+    /**
+     * Deletes the activity with a single DELETE statement, after a locking read of only the columns the stats are
+     * counted by. Deleting an activity that does not exist is a no-op, so repeating a delete is safe.
+     *
+     * @return whether an activity was deleted
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ACTIVITY_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
+    })
+    public boolean deleteActivity(Long id) {
+        var changeVersion = changeVersionTracker.begin();
+        ActivitySummary deleted;
+        try {
+            deleted = transactionTemplate.execute(status -> {
+                var summary = activityRepository.findSummaryById(id);
+                if (summary.isEmpty()) {
+                    return null;
+                }
+
+                // The row is locked, so the delete finds it as it was read
+                activityRepository.removeById(id);
+                addTombstone(id, changeVersion);
+                return summary.get();
+            });
+        } finally {
+            changeVersionTracker.end(changeVersion);
+        }
+
+        if (deleted == null) {
+            return false;
+        }
+
+        activityStatsCounters.removed(deleted, changeVersion);
+        afterWrite(ActivityEvent.deleted(id, changeVersion));
+
+        return true;
+    }
+
+    /**
+     * Deletes every activity of the given type in one transaction, without loading them: a locking read of their
+     * participants for the stats, one INSERT ... SELECT for the tombstones and one DELETE.
+     *
+     * @return the number of activities deleted
+     */
+    @CacheEvict(cacheNames = {ACTIVITY_CACHE, ACTIVITY_PAGE_CACHE}, allEntries = true)
+    public int deleteActivitiesByType(String type) {
+        var changeVersion = changeVersionTracker.begin();
+        // Participants of the rows locked for the delete, taken out of the stats once it has committed
+        var lockedParticipants = new ArrayList<Integer>();
+        int deleted;
+        try {
+            deleted = Objects.requireNonNull(transactionTemplate.execute(status -> {
+                lockedParticipants.addAll(activityRepository.findParticipantsByType(type));
+                var tombstones = activityTombstoneRepository.addTombstonesByType(type, changeVersion);
+                if (tombstones == 0) {
+                    return 0;
+                }
+
+                var deletedRows = activityRepository.removeTombstonedByType(type, changeVersion);
+                if (deletedRows != tombstones) {
+                    // Some rows changed type or were deleted in between, and must not be reported as deleted
+                    activityTombstoneRepository.removeTombstonesOfExistingActivities(changeVersion);
+                }
+                return deletedRows;
+            }));
+        } finally {
+            changeVersionTracker.end(changeVersion);
+        }
+
+        if (deleted > 0) {
+            if (deleted == lockedParticipants.size()) {
+                lockedParticipants.forEach(participants -> activityStatsCounters.removed(Activity.builder()
+                        .type(type)
+                        .participants(participants)
+                        .build(), changeVersion));
+            } else {
+                // Rows of the type inserted after the locking read were deleted too, with values that were not read
+                activityStatsCounters.reconcileSoon();
+            }
+            afterWrite(ActivityEvent.resync());
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Inserts the activities in transactions of {@link #BATCH_CHUNK_SIZE} rows, using JDBC batching.
+     * If a chunk fails, every activity in that chunk is reported as failed.
+     */
+    @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
+    public List<ActivityBatchResult> createActivities(List<Activity> activities) {
+        var results = new ArrayList<ActivityBatchResult>(activities.size());
+
+        for (var chunk : chunk(activities)) {
+            var changeVersion = changeVersionTracker.begin();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    chunk.forEach(activity -> {
+                        activity.setId(null);
+                        activity.setChangeVersion(changeVersion);
+                    });
+                    activityRepository.saveAll(chunk);
+                    activityRepository.flush();
+                    entityManager.clear();
+                });
+
+                chunk.forEach(activity -> {
+                    activityStatsCounters.added(activity, changeVersion);
+                    results.add(ActivityBatchResult.builder()
+                            .id(activity.getId())
+                            .status(ActivityBatchResult.Status.CREATED)
+                            .activity(activity)
+                            .build());
+                });
+            } catch (RuntimeException e) {
+                chunk.forEach(activity -> results.add(failedBatchResult(null, e)));
+            } finally {
+                changeVersionTracker.end(changeVersion);
+            }
+        }
+
+        afterWrite(ActivityEvent.resync());
+
+        return results;
+    }
+
+    /**
+     * Inserts activities taken from the {@link ActivityIngestQueue} in one transaction, together with the journal
+     * sequence they complete, so that recovery after a crash replays exactly the entries that were not committed.
+     * An empty list only moves the checkpoint, past an entry that could not be inserted.
+     */
+    @CacheEvict(cacheNames = ACTIVITY_PAGE_CACHE, allEntries = true)
+    public List<Activity> createIngestedActivities(List<Activity> activities, long committedSequence) {
+        var changeVersion = changeVersionTracker.begin();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                activities.forEach(activity -> {
+                    // A failed attempt may have assigned an id and version already
+                    activity.setId(null);
+                    activity.setVersion(null);
+                    activity.setChangeVersion(changeVersion);
+                });
+                activityRepository.saveAll(activities);
+                activityIngestCheckpointRepository.updateCommittedSequence(committedSequence);
+                activityRepository.flush();
+                entityManager.clear();
+            });
+        } finally {
+            changeVersionTracker.end(changeVersion);
+        }
+
+        activities.forEach(activity -> {
+            activityStatsCounters.added(activity, changeVersion);
+            afterWrite(ActivityEvent.created(activity));
+        });
+
+        return activities;
+    }
+
+    /**
+     * Updates the activities in transactions of {@link #BATCH_CHUNK_SIZE} rows.
+     * Existing rows are loaded with one query per chunk and written back as batched updates.
+     */
+    @CacheEvict(cacheNames = {ACTIVITY_CACHE, ACTIVITY_PAGE_CACHE}, allEntries = true)
+    public List<ActivityBatchResult> updateActivities(List<Activity> updatedActivities) {
+        var results = new ArrayList<ActivityBatchResult>(updatedActivities.size());
+
+        for (var chunk : chunk(updatedActivities)) {
+            var chunkResults = new ArrayList<ActivityBatchResult>(chunk.size());
+            // Copies of the values each update replaces, taken out of the stats once the chunk has committed
+            var replaced = new ArrayList<Activity>(chunk.size());
+            var changeVersion = changeVersionTracker.begin();
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    var ids = chunk.stream()
+                            .map(Activity::getId)
+                            .filter(Objects::nonNull)
+                            .toList();
+
+                    var existingActivities = activityRepository.findAllById(ids).stream()
+                            .collect(Collectors.toMap(Activity::getId, Function.identity()));
+
+                    for (var updatedActivity : chunk) {
+                        var activity = updatedActivity.getId() == null
+                                ? null
+                                : existingActivities.get(updatedActivity.getId());
+
+                        if (activity == null) {
+                            chunkResults.add(notFoundBatchResult(updatedActivity.getId()));
+                            continue;
+                        }
+
+                        replaced.add(Activity.builder()
+                                .type(activity.getType())
+                                .participants(activity.getParticipants())
+                                .build());
+                        // Changes to managed entities are flushed on commit
+                        activity.setName(updatedActivity.getName());
+                        activity.setType(updatedActivity.getType());
+                        activity.setParticipants(updatedActivity.getParticipants());
+                        activity.setChangeVersion(changeVersion);
+
+                        chunkResults.add(ActivityBatchResult.builder()
+                                .id(activity.getId())
+                                .status(ActivityBatchResult.Status.UPDATED)
+                                .activity(activity)
+                                .build());
+                    }
+                });
+
+                replaced.forEach(previous -> activityStatsCounters.removed(previous, changeVersion));
+                chunkResults.forEach(result -> {
+                    if (result.getStatus() == ActivityBatchResult.Status.UPDATED) {
+                        activityStatsCounters.added(result.getActivity(), changeVersion);
+                    }
+                });
+                results.addAll(chunkResults);
+            } catch (RuntimeException e) {
+                chunk.forEach(activity -> results.add(failedBatchResult(activity.getId(), e)));
+            } finally {
+                changeVersionTracker.end(changeVersion);
+            }
+        }
+
+        afterWrite(ActivityEvent.resync());
+
+        return results;
+    }
+
+    /**
+     * Deletes the activities in transactions of {@link #BATCH_CHUNK_SIZE} ids, with one locking read of the existing
+     * ids and the columns the stats are counted by, and one delete statement per chunk.
+     */
+    @CacheEvict(cacheNames = {ACTIVITY_CACHE, ACTIVITY_PAGE_CACHE}, allEntries = true)
+    public List<ActivityBatchResult> deleteActivities(List<Long> ids) {
+        var results = new ArrayList<ActivityBatchResult>(ids.size());
+
+        for (var chunk : chunk(ids)) {
+            var chunkResults = new ArrayList<ActivityBatchResult>(chunk.size());
+            var deleted = new ArrayList<ActivitySummary>(chunk.size());
+            var changeVersion = changeVersionTracker.begin();
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    deleted.addAll(activityRepository.findSummariesByIds(chunk.stream()
+                            .filter(Objects::nonNull)
+                            .toList()));
+                    var existingIds = deleted.stream()
+                            .map(ActivitySummary::getId)
+                            .collect(Collectors.toSet());
+
+                    if (!existingIds.isEmpty()) {
+                        activityRepository.deleteAllByIdInBatch(existingIds);
+                        existingIds.forEach(id -> addTombstone(id, changeVersion));
+                    }
+
+                    for (var id : chunk) {
+                        chunkResults.add(existingIds.contains(id)
+                                ? ActivityBatchResult.builder()
+                                .id(id)
+                                .status(ActivityBatchResult.Status.DELETED)
+                                .build()
+                                : notFoundBatchResult(id));
+                    }
+                });
+
+                deleted.forEach(summary -> activityStatsCounters.removed(summary, changeVersion));
+                results.addAll(chunkResults);
+            } catch (RuntimeException e) {
+                chunk.forEach(id -> results.add(failedBatchResult(id, e)));
+            } finally {
+                changeVersionTracker.end(changeVersion);
+            }
+        }
+
+        afterWrite(ActivityEvent.resync());
+
+        return results;
+    }
+
+    // Called once a write has committed
+    private void afterWrite(ActivityEvent event) {
+        tableVersion.incrementAndGet();
+        eventPublisher.publishEvent(event);
+    }
+
+    // Takes the activities from the pool in one go and inserts them in one transaction
+    private List<Activity> createRandomActivities(int count) {
+        var activities = randomActivityPool.take(count).stream()
+                .map(ActivityService::convertActivityDtoToEntity)
+                .toList();
+        if (activities.isEmpty()) {
+            return activities;
+        }
+
+        var changeVersion = changeVersionTracker.begin();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                activities.forEach(activity -> activity.setChangeVersion(changeVersion));
+                activityRepository.saveAll(activities);
+            });
+        } finally {
+            changeVersionTracker.end(changeVersion);
+        }
+
+        activities.forEach(activity -> {
+            activityStatsCounters.added(activity, changeVersion);
+            afterWrite(ActivityEvent.created(activity));
+        });
+
+        return activities;
+    }
+
+    private Activity saveWithChangeVersion(Activity activity) {
+        var changeVersion = changeVersionTracker.begin();
+        try {
+            activity.setChangeVersion(changeVersion);
+            return activityRepository.save(activity);
+        } finally {
+            changeVersionTracker.end(changeVersion);
+        }
+    }
+
+    // Persisted directly, because save() would first SELECT the tombstone to decide between insert and merge
+    private void addTombstone(Long activityId, long changeVersion) {
+        entityManager.persist(new ActivityTombstone(activityId, changeVersion));
+    }
+
+    // Whether the upsert comes before the deletion in (change version, id) order. Ids are never reused, so no tie
+    private static boolean comesFirst(Activity activity, ActivityTombstone tombstone) {
+        var byVersion = Long.compare(activity.getChangeVersion(), tombstone.getChangeVersion());
+        return byVersion != 0 ? byVersion < 0 : activity.getId() < tombstone.getActivityId();
+    }
+
+    private static <T> List<List<T>> chunk(List<T> items) {
+        var chunks = new ArrayList<List<T>>();
+        for (var i = 0; i < items.size(); i += BATCH_CHUNK_SIZE) {
+            chunks.add(items.subList(i, Math.min(i + BATCH_CHUNK_SIZE, items.size())));
+        }
+        return chunks;
+    }
+
+    private static ActivityBatchResult notFoundBatchResult(Long id) {
+        return ActivityBatchResult.builder()
+                .id(id)
+                .status(ActivityBatchResult.Status.NOT_FOUND)
+                .build();
+    }
+
+    private static ActivityBatchResult failedBatchResult(Long id, RuntimeException e) {
+        return ActivityBatchResult.builder()
+                .id(id)
+                .status(ActivityBatchResult.Status.FAILED)
+                .error(e.getMessage())
+                .build();
     }
 
-    private static Activity convertActivityDtoToEntity(ActivityDto activityDto) {
+    // Package-private for the benchmarks in src/jmh/java
+    static Activity convertActivityDtoToEntity(ActivityDto activityDto) {
         return Activity.builder()
                 .name(activityDto.getName())
                 .type(activityDto.getType())
@@ -0,0 +1,382 @@
+package com.ounal.activity_manager;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, memory-mapped columnar copy of the activities table, sorted by id.
+ * <p>
+ * Every attribute is stored in its own column of primitives: ids and versions as longs, participants as ints,
+ * the type as an index into a dictionary of distinct types, and all names UTF-8 encoded back to back with an
+ * offset per row. The columns live outside the heap, only the type dictionary is loaded. Reading a single
+ * attribute of a row allocates nothing, so rows can be scanned and filtered without creating objects, and only
+ * the rows that are returned are turned into {@link Activity} instances.
+ * <p>
+ * Each column is mapped on its own, so a column, not the file, is limited to 2 GB.
+ */
+final class ActivitySnapshot {
+
+    static final int NO_TYPE = -1;
+
+    private static final int MAGIC = 0x41435453;
+    private static final int FORMAT_VERSION = 1;
+    // magic, format version, change version, row count, type count, names length, dictionary length
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8 + 8;
+    // Keeps every column within a single mapping
+    private static final int MAX_ROWS = Integer.MAX_VALUE / Long.BYTES;
+
+    private static final byte NULL_NAME = 1;
+    private static final byte NULL_PARTICIPANTS = 2;
+    private static final byte NULL_VERSION = 4;
+    private static final byte NULL_CHANGE_VERSION = 8;
+
+    private final Path file;
+    private final long changeVersion;
+    private final int size;
+    private final LongBuffer ids;
+    private final LongBuffer versions;
+    private final LongBuffer changeVersions;
+    private final IntBuffer participants;
+    private final IntBuffer typeCodes;
+    // One more than there are rows, the name of row i spans [nameOffsets[i], nameOffsets[i + 1])
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer flags;
+    private final ByteBuffer names;
+    private final String[] types;
+    private final Map<String, Integer> typeCodesByType;
+
+    private ActivitySnapshot(Path file, long changeVersion, int size, LongBuffer ids, LongBuffer versions,
+                             LongBuffer changeVersions, IntBuffer participants, IntBuffer typeCodes,
+                             IntBuffer nameOffsets, ByteBuffer flags, ByteBuffer names, String[] types) {
+        this.file = file;
+        this.changeVersion = changeVersion;
+        this.size = size;
+        this.ids = ids;
+        this.versions = versions;
+        this.changeVersions = changeVersions;
+        this.participants = participants;
+        this.typeCodes = typeCodes;
+        this.nameOffsets = nameOffsets;
+        this.flags = flags;
+        this.names = names;
+        this.types = types;
+
+        this.typeCodesByType = new HashMap<>();
+        for (var code = 0; code < types.length; code++) {
+            typeCodesByType.put(types[code], code);
+        }
+    }
+
+    /**
+     * Writes the activities, which must come in ascending id order, to the file and maps it. The file is replaced
+     * atomically, so a reader never sees it half written.
+     *
+     * @param changeVersion the change version up to which the activities are complete
+     */
+    static ActivitySnapshot write(Path file, Iterator<Activity> activities, long changeVersion) throws IOException {
+        var directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        // Columns are streamed to separate files first, because the row count is only known at the end
+        var columnDirectory = Files.createTempDirectory(directory, "columns");
+        try (var ids = new ColumnWriter(columnDirectory.resolve("ids"));
+             var versions = new ColumnWriter(columnDirectory.resolve("versions"));
+             var changeVersions = new ColumnWriter(columnDirectory.resolve("change-versions"));
+             var participants = new ColumnWriter(columnDirectory.resolve("participants"));
+             var typeCodes = new ColumnWriter(columnDirectory.resolve("type-codes"));
+             var nameOffsets = new ColumnWriter(columnDirectory.resolve("name-offsets"));
+             var flags = new ColumnWriter(columnDirectory.resolve("flags"));
+             var names = new ColumnWriter(columnDirectory.resolve("names"));
+             var dictionary = new ColumnWriter(columnDirectory.resolve("dictionary"))) {
+
+            var dictionaryCodes = new LinkedHashMap<String, Integer>();
+            var size = 0;
+            var previousId = Long.MIN_VALUE;
+            long namesLength = 0;
+            nameOffsets.out.writeInt(0);
+
+            while (activities.hasNext()) {
+                var activity = activities.next();
+                if (size == MAX_ROWS) {
+                    throw new IllegalStateException("Too many activities for one snapshot");
+                }
+                if (size > 0 && activity.getId() <= previousId) {
+                    throw new IllegalArgumentException("Activities must be in ascending id order, got "
+                            + activity.getId() + " after " + previousId);
+                }
+                previousId = activity.getId();
+
+                ids.out.writeLong(activity.getId());
+                versions.out.writeLong(activity.getVersion() == null ? 0 : activity.getVersion());
+                changeVersions.out.writeLong(activity.getChangeVersion() == null ? 0 : activity.getChangeVersion());
+                participants.out.writeInt(activity.getParticipants() == null ? 0 : activity.getParticipants());
+                typeCodes.out.writeInt(activity.getType() == null
+                        ? NO_TYPE
+                        : dictionaryCodes.computeIfAbsent(activity.getType(), type -> dictionaryCodes.size()));
+
+                if (activity.getName() != null) {
+                    var name = activity.getName().getBytes(StandardCharsets.UTF_8);
+                    namesLength += name.length;
+                    if (namesLength > Integer.MAX_VALUE) {
+                        throw new IllegalStateException("Activity names exceed the size of one snapshot column");
+                    }
+                    names.out.write(name);
+                }
+                nameOffsets.out.writeInt((int) namesLength);
+
+                byte rowFlags = 0;
+                if (activity.getName() == null) {
+                    rowFlags |= NULL_NAME;
+                }
+                if (activity.getParticipants() == null) {
+                    rowFlags |= NULL_PARTICIPANTS;
+                }
+                if (activity.getVersion() == null) {
+                    rowFlags |= NULL_VERSION;
+                }
+                if (activity.getChangeVersion() == null) {
+                    rowFlags |= NULL_CHANGE_VERSION;
+                }
+                flags.out.writeByte(rowFlags);
+                size++;
+            }
+
+            for (var type : dictionaryCodes.keySet()) {
+                var bytes = type.getBytes(StandardCharsets.UTF_8);
+                dictionary.out.writeInt(bytes.length);
+                dictionary.out.write(bytes);
+            }
+
+            var columns = List.of(ids, versions, changeVersions, participants, typeCodes, nameOffsets, flags, names,
+                    dictionary);
+            for (var column : columns) {
+                column.close();
+            }
+
+            var header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(changeVersion)
+                    .putInt(size)
+                    .putInt(dictionaryCodes.size())
+                    .putLong(namesLength)
+                    .putLong(Files.size(dictionary.path))
+                    .flip();
+
+            var tempFile = columnDirectory.resolve("snapshot");
+            try (var out = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                for (var column : columns) {
+                    try (var in = FileChannel.open(column.path, StandardOpenOption.READ)) {
+                        for (long position = 0, length = in.size(); position < length; ) {
+                            position += in.transferTo(position, length - position, out);
+                        }
+                    }
+                }
+                out.force(true);
+            }
+
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            deleteRecursively(columnDirectory);
+        }
+
+        return open(file);
+    }
+
+    static ActivitySnapshot open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not an activity snapshot: " + file);
+            }
+
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not an activity snapshot: " + file);
+            }
+
+            var changeVersion = header.getLong();
+            var size = header.getInt();
+            var typeCount = header.getInt();
+            var namesLength = header.getLong();
+            var dictionaryLength = header.getLong();
+
+            var columns = new ColumnReader(channel, HEADER_SIZE);
+            var ids = columns.next((long) size * Long.BYTES).asLongBuffer();
+            var versions = columns.next((long) size * Long.BYTES).asLongBuffer();
+            var changeVersions = columns.next((long) size * Long.BYTES).asLongBuffer();
+            var participants = columns.next((long) size * Integer.BYTES).asIntBuffer();
+            var typeCodes = columns.next((long) size * Integer.BYTES).asIntBuffer();
+            var nameOffsets = columns.next((size + 1L) * Integer.BYTES).asIntBuffer();
+            var flags = columns.next(size);
+            var names = columns.next(namesLength);
+
+            var dictionary = columns.next(dictionaryLength);
+            var types = new String[typeCount];
+            for (var code = 0; code < typeCount; code++) {
+                var bytes = new byte[dictionary.getInt()];
+                dictionary.get(bytes);
+                types[code] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            return new ActivitySnapshot(file, changeVersion, size, ids, versions, changeVersions, participants,
+                    typeCodes, nameOffsets, flags, names, types);
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getChangeVersion() {
+        return changeVersion;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long id(int row) {
+        return ids.get(row);
+    }
+
+    /**
+     * Row of the activity with the given id, or -1 if the snapshot does not contain it.
+     */
+    int findRow(long id) {
+        var row = firstRowAfter(id - 1);
+        return row < size && ids.get(row) == id ? row : -1;
+    }
+
+    /**
+     * First row whose id is greater than the given one, or {@link #size()} if there is none.
+     */
+    int firstRowAfter(long id) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (ids.get(middle) <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Dictionary code of the type, or {@link #NO_TYPE} if no activity in the snapshot has it.
+     */
+    int findTypeCode(String type) {
+        return typeCodesByType.getOrDefault(type, NO_TYPE);
+    }
+
+    // NO_TYPE for an activity without a type
+    int typeCode(int row) {
+        return typeCodes.get(row);
+    }
+
+    boolean hasParticipants(int row) {
+        return (flags.get(row) & NULL_PARTICIPANTS) == 0;
+    }
+
+    int participants(int row) {
+        return participants.get(row);
+    }
+
+    Activity toActivity(int row) {
+        var rowFlags = flags.get(row);
+
+        String name = null;
+        if ((rowFlags & NULL_NAME) == 0) {
+            var start = nameOffsets.get(row);
+            var bytes = new byte[nameOffsets.get(row + 1) - start];
+            names.get(start, bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        var typeCode = typeCodes.get(row);
+
+        return Activity.builder()
+                .id(ids.get(row))
+                .name(name)
+                .type(typeCode == NO_TYPE ? null : types[typeCode])
+                .participants((rowFlags & NULL_PARTICIPANTS) == 0 ? participants.get(row) : null)
+                .changeVersion((rowFlags & NULL_CHANGE_VERSION) == 0 ? changeVersions.get(row) : null)
+                .version((rowFlags & NULL_VERSION) == 0 ? versions.get(row) : null)
+                .build();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            var sorted = new ArrayList<>(paths.toList());
+            sorted.sort(Comparator.reverseOrder());
+            for (var path : sorted) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static final class ColumnWriter implements Closeable {
+
+        private final Path path;
+        private final DataOutputStream out;
+        private boolean closed;
+
+        private ColumnWriter(Path path) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    // Maps the columns one after the other. A mapping stays valid after the channel is closed.
+    private static final class ColumnReader {
+
+        private final FileChannel channel;
+        private long position;
+
+        private ColumnReader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        private ByteBuffer next(long length) throws IOException {
+            if (position + length > channel.size()) {
+                throw new IOException("Truncated activity snapshot");
+            }
+
+            var column = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return column;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.snapshot")
+public class ActivitySnapshotProperties {
+
+    // When disabled, GET /activities and GET /activities/{id} always query the database
+    private boolean enabled = false;
+    // Holds the memory-mapped snapshot file, reopened on restart
+    private Path directory = Path.of("data", "snapshot");
+    // Changed or deleted activities kept on the heap before they are merged into a new snapshot file
+    private int compactionThreshold = 10_000;
+}
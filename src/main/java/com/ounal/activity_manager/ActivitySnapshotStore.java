@@ -0,0 +1,418 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Read store for large, read-mostly catalogs, enabled with {@code activity-manager.snapshot.enabled}.
+ * <p>
+ * Serves {@code GET /activities} and {@code GET /activities/{id}} from a memory-mapped {@link ActivitySnapshot}
+ * instead of the database, so millions of activities take page cache rather than heap. The snapshot is written on
+ * startup, or reopened if one from an earlier run is still in the directory, and then follows the change-version feed
+ * through {@link ChangeFeedReader}, like {@link ActivitySearchIndex}: every write event schedules a catch-up that puts the changed activities and the
+ * deleted ids into a small sorted overlay on the heap. Reads merge the overlay into the snapshot by id, and a read
+ * that finds the store behind catches up first, so clients always find their own committed writes. Once the overlay
+ * reaches {@code compaction-threshold} entries, snapshot and overlay are merged into a new file in the background.
+ * <p>
+ * The snapshot belongs to the database it was built from, so the directory must not be shared or reused with
+ * another one.
+ */
+@Slf4j
+@Component
+public class ActivitySnapshotStore {
+
+    static final String FILE_PREFIX = "activities-";
+    static final String FILE_SUFFIX = ".snapshot";
+
+    private final ActivityRepository activityRepository;
+    private final ChangeFeedReader changeFeedReader;
+    private final ChangeVersionTracker changeVersionTracker;
+    private final EntityManager entityManager;
+    private final ActivitySnapshotProperties properties;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final TaskExecutor compactionExecutor;
+    private final ChangeFeedReader.CatchUp scheduledCatchUp;
+    private final ReentrantLock catchUpLock = new ReentrantLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    // Replaced as a whole, so a read never sees a snapshot and an overlay that do not belong together
+    private volatile View view;
+
+    @Autowired
+    public ActivitySnapshotStore(ActivityRepository activityRepository,
+                                 ChangeFeedReader changeFeedReader,
+                                 ChangeVersionTracker changeVersionTracker,
+                                 EntityManager entityManager,
+                                 PlatformTransactionManager transactionManager,
+                                 @Qualifier("applicationTaskExecutor") TaskExecutor compactionExecutor,
+                                 ActivitySnapshotProperties properties) {
+        this.activityRepository = activityRepository;
+        this.changeFeedReader = changeFeedReader;
+        this.changeVersionTracker = changeVersionTracker;
+        this.entityManager = entityManager;
+        this.compactionExecutor = compactionExecutor;
+        this.properties = properties;
+        this.scheduledCatchUp = changeFeedReader.newCatchUp("activity snapshot", this::catchUp);
+
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Whether reads can be served from the store. Until the first snapshot is ready they go to the database.
+     */
+    public boolean isAvailable() {
+        return properties.isEnabled() && view != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (properties.isEnabled()) {
+            scheduledCatchUp.schedule();
+        }
+    }
+
+    @EventListener
+    public void onActivityEvent(ActivityEvent event) {
+        if (properties.isEnabled()) {
+            scheduledCatchUp.schedule();
+        }
+    }
+
+    /**
+     * Keyset page of activities with an id greater than {@code after}, like {@link ActivityRepository#findPage}.
+     * Rows of the snapshot are filtered on their columns, only the returned ones are materialized.
+     */
+    public ActivityPage getActivities(long after, int pageSize, ActivityFilter filter) {
+        var current = currentView();
+        var snapshot = current.snapshot;
+
+        // Fetch one extra row to find out whether there is a next page
+        var activities = new ArrayList<Activity>(Math.min(pageSize + 1, ActivityService.DEFAULT_PAGE_SIZE + 1));
+        var iterator = new MergingIterator(snapshot, current.overlay, after,
+                rowFilter(snapshot, filter), activityFilter(filter));
+        while (activities.size() <= pageSize && iterator.hasNext()) {
+            activities.add(iterator.next());
+        }
+
+        if (activities.size() <= pageSize) {
+            return new ActivityPage(activities, null);
+        }
+
+        activities.remove(pageSize);
+        return new ActivityPage(activities, activities.get(pageSize - 1).getId());
+    }
+
+    public Optional<Activity> getActivity(long id) {
+        var current = currentView();
+
+        if (current.overlay.containsKey(id)) {
+            return Optional.ofNullable(current.overlay.get(id));
+        }
+
+        var row = current.snapshot.findRow(id);
+        return row < 0 ? Optional.empty() : Optional.of(current.snapshot.toActivity(row));
+    }
+
+    /**
+     * Brings the store up to the tracker's safe version. Opens or writes the snapshot the first time.
+     */
+    void catchUp() {
+        catchUpLock.lock();
+        try {
+            var upTo = changeVersionTracker.getSafeVersion();
+            var current = view;
+            if (current != null && current.version == upTo) {
+                return;
+            }
+
+            if (current == null) {
+                var snapshot = openOrBuild(upTo);
+                current = new View(snapshot, Collections.emptyNavigableMap(), snapshot.getChangeVersion());
+            }
+
+            var overlay = new TreeMap<>(current.overlay);
+            changeFeedReader.readChanges(current.version, upTo,
+                    // Copied, so the overlay never shares an entity with a persistence context
+                    activity -> overlay.put(activity.getId(), Activity.builder()
+                            .id(activity.getId())
+                            .name(activity.getName())
+                            .type(activity.getType())
+                            .participants(activity.getParticipants())
+                            .changeVersion(activity.getChangeVersion())
+                            .version(activity.getVersion())
+                            .build()),
+                    // Null marks the deletion
+                    id -> overlay.put(id, null));
+
+            view = new View(current.snapshot, Collections.unmodifiableNavigableMap(overlay), upTo);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            catchUpLock.unlock();
+        }
+
+        if (view.overlay.size() >= properties.getCompactionThreshold()) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Merges the overlay into a new snapshot file. Reads and catch-ups carry on with the current view meanwhile,
+     * and the changes they add to the overlay are kept when the new snapshot is swapped in.
+     */
+    void compact() {
+        var source = view;
+        try {
+            var snapshot = ActivitySnapshot.write(snapshotFile(source.version),
+                    new MergingIterator(source.snapshot, source.overlay, Long.MIN_VALUE, row -> true, activity -> true),
+                    source.version);
+
+            catchUpLock.lock();
+            try {
+                var current = view;
+                var overlay = new TreeMap<Long, Activity>();
+                current.overlay.forEach((id, activity) -> {
+                    // Entries are replaced, never modified, so an unchanged entry is the same instance
+                    if (!source.overlay.containsKey(id) || source.overlay.get(id) != activity) {
+                        overlay.put(id, activity);
+                    }
+                });
+
+                view = new View(snapshot, Collections.unmodifiableNavigableMap(overlay), current.version);
+            } finally {
+                catchUpLock.unlock();
+            }
+
+            // Readers still holding the old snapshot keep its mapping, which outlives the file on Linux
+            if (!source.snapshot.getFile().equals(snapshot.getFile())) {
+                Files.deleteIfExists(source.snapshot.getFile());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private View currentView() {
+        if (view == null || view.version < changeVersionTracker.getSafeVersion()) {
+            catchUp();
+        }
+        return view;
+    }
+
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        compactionExecutor.execute(() -> {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                // The next catch-up retries, the overlay keeps every change meanwhile
+                log.warn("Could not compact the activity snapshot", e);
+            } finally {
+                compactionScheduled.set(false);
+            }
+        });
+    }
+
+    // Reopens the newest snapshot that is not ahead of the database, which the catch-up then brings up to date
+    private ActivitySnapshot openOrBuild(long upTo) throws IOException {
+        var files = new ArrayList<Path>();
+        if (Files.isDirectory(properties.getDirectory())) {
+            try (var paths = Files.list(properties.getDirectory())) {
+                paths.filter(path -> snapshotVersion(path) >= 0)
+                        .forEach(files::add);
+            }
+        }
+        files.sort((a, b) -> Long.compare(snapshotVersion(b), snapshotVersion(a)));
+
+        ActivitySnapshot snapshot = null;
+        for (var file : files) {
+            if (snapshot == null && snapshotVersion(file) <= upTo) {
+                try {
+                    snapshot = ActivitySnapshot.open(file);
+                    log.info("Reopened the activity snapshot {} with {} activities", file, snapshot.size());
+                    continue;
+                } catch (IOException e) {
+                    log.warn("Could not reopen the activity snapshot {}, building a new one", file, e);
+                }
+            }
+            Files.deleteIfExists(file);
+        }
+
+        return snapshot != null ? snapshot : build(upTo);
+    }
+
+    // Rows changed while streaming are written again by the next catch-up, which is harmless
+    private ActivitySnapshot build(long upTo) {
+        var snapshot = readOnlyTransactionTemplate.execute(status -> {
+            try (var activities = activityRepository.streamAll()) {
+                return ActivitySnapshot.write(snapshotFile(upTo), activities
+                        .peek(entityManager::detach)
+                        .iterator(), upTo);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        log.info("Wrote the activity snapshot {} with {} activities", snapshot.getFile(), snapshot.size());
+        return snapshot;
+    }
+
+    private Path snapshotFile(long changeVersion) {
+        return properties.getDirectory().resolve(FILE_PREFIX + changeVersion + FILE_SUFFIX);
+    }
+
+    // -1 for files that are not snapshots
+    private static long snapshotVersion(Path file) {
+        var name = file.getFileName().toString();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Resolves the filter against the snapshot once, so each row is checked on its columns alone
+    private static IntPredicate rowFilter(ActivitySnapshot snapshot, ActivityFilter filter) {
+        var typeCode = filter.getType() == null ? ActivitySnapshot.NO_TYPE : snapshot.findTypeCode(filter.getType());
+        if (filter.getType() != null && typeCode == ActivitySnapshot.NO_TYPE) {
+            return row -> false;
+        }
+
+        var participantsFiltered = filter.getMinParticipants() != null || filter.getMaxParticipants() != null;
+        int minParticipants = filter.getMinParticipants() == null ? Integer.MIN_VALUE : filter.getMinParticipants();
+        int maxParticipants = filter.getMaxParticipants() == null ? Integer.MAX_VALUE : filter.getMaxParticipants();
+
+        return row -> (typeCode == ActivitySnapshot.NO_TYPE || snapshot.typeCode(row) == typeCode)
+                && (!participantsFiltered || snapshot.hasParticipants(row)
+                && snapshot.participants(row) >= minParticipants
+                && snapshot.participants(row) <= maxParticipants);
+    }
+
+    // Same conditions as the queries of ActivityRepository, where a missing value never matches a bound
+    private static Predicate<Activity> activityFilter(ActivityFilter filter) {
+        return activity -> (filter.getType() == null || filter.getType().equals(activity.getType()))
+                && (filter.getMinParticipants() == null || activity.getParticipants() != null
+                && activity.getParticipants() >= filter.getMinParticipants())
+                && (filter.getMaxParticipants() == null || activity.getParticipants() != null
+                && activity.getParticipants() <= filter.getMaxParticipants());
+    }
+
+    private static final class View {
+
+        private final ActivitySnapshot snapshot;
+        // Activities changed since the snapshot was written, by id. Null marks a deleted activity.
+        private final NavigableMap<Long, Activity> overlay;
+        private final long version;
+
+        private View(ActivitySnapshot snapshot, NavigableMap<Long, Activity> overlay, long version) {
+            this.snapshot = snapshot;
+            this.overlay = overlay;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Activities of the snapshot and the overlay in id order, starting after the given id. An overlay entry replaces
+     * or deletes the snapshot row with the same id.
+     */
+    private static final class MergingIterator implements Iterator<Activity> {
+
+        private final ActivitySnapshot snapshot;
+        private final Iterator<Map.Entry<Long, Activity>> overlayEntries;
+        private final IntPredicate rowFilter;
+        private final Predicate<Activity> activityFilter;
+        private Map.Entry<Long, Activity> overlayEntry;
+        private int row;
+        private Activity next;
+
+        private MergingIterator(ActivitySnapshot snapshot, NavigableMap<Long, Activity> overlay, long after,
+                                IntPredicate rowFilter, Predicate<Activity> activityFilter) {
+            this.snapshot = snapshot;
+            this.overlayEntries = overlay.tailMap(after, false).entrySet().iterator();
+            this.rowFilter = rowFilter;
+            this.activityFilter = activityFilter;
+            this.overlayEntry = nextOverlayEntry();
+            this.row = snapshot.firstRowAfter(after);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Activity next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            var current = next;
+            next = null;
+            return current;
+        }
+
+        private Activity advance() {
+            while (row < snapshot.size() || overlayEntry != null) {
+                var rowId = row < snapshot.size() ? snapshot.id(row) : Long.MAX_VALUE;
+
+                if (overlayEntry == null || rowId < overlayEntry.getKey()) {
+                    var current = row++;
+                    if (rowFilter.test(current)) {
+                        return snapshot.toActivity(current);
+                    }
+                    continue;
+                }
+
+                if (rowId == overlayEntry.getKey()) {
+                    row++;
+                }
+
+                var activity = overlayEntry.getValue();
+                overlayEntry = nextOverlayEntry();
+                if (activity != null && activityFilter.test(activity)) {
+                    return activity;
+                }
+            }
+            return null;
+        }
+
+        private Map.Entry<Long, Activity> nextOverlayEntry() {
+            return overlayEntries.hasNext() ? overlayEntries.next() : null;
+        }
+    }
+}
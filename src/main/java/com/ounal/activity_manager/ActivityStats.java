@@ -0,0 +1,22 @@
+package com.ounal.activity_manager;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ActivityStats {
+
+    private long count;
+    private long totalParticipants;
+    // Over activities that have a participant count, null if none do
+    private Double averageParticipants;
+    private Map<String, Long> countByType;
+    private Map<Integer, Long> countByParticipants;
+}
@@ -0,0 +1,213 @@
+package com.ounal.activity_manager;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory activity statistics, so reading them costs the same regardless of table size.
+ * <p>
+ * {@link ActivityService} applies each committed write as a delta, taking out the values an update or delete replaced.
+ * Writes whose replaced values are unknown request a recount instead, delayed so that a burst of writes shares one
+ * GROUP BY query. A periodic recount also corrects any drift.
+ * <p>
+ * A recount counts under the {@link ChangeVersionTracker} fence, so it includes exactly the writes up to the fence
+ * version. Deltas applied while it runs are recorded with their change version, and those of later writes are
+ * replayed onto the recount when it replaces the counters.
+ */
+@Slf4j
+@Component
+public class ActivityStatsCounters {
+
+    private final ActivityRepository activityRepository;
+    private final ChangeVersionTracker changeVersionTracker;
+    private final ActivityStatsProperties properties;
+    private final TaskScheduler taskScheduler;
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+    // Held while applying a delta and while replacing the counters, so no delta is lost in between
+    private final ReentrantLock swapLock = new ReentrantLock();
+    // Replaced as a whole by a recount, so readers never see a half-built set of counters
+    private volatile Counters counters = new Counters();
+    // Deltas applied while a recount runs, null otherwise
+    private List<Delta> recordedDeltas;
+
+    @Autowired
+    public ActivityStatsCounters(ActivityRepository activityRepository,
+                                 ChangeVersionTracker changeVersionTracker,
+                                 ActivityStatsProperties properties,
+                                 TaskScheduler taskScheduler) {
+        this.activityRepository = activityRepository;
+        this.changeVersionTracker = changeVersionTracker;
+        this.properties = properties;
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * Counts an activity written under the given change version.
+     */
+    public void added(ActivitySummary activity, long changeVersion) {
+        apply(new Delta(activity.getType(), activity.getParticipants(), 1, changeVersion));
+    }
+
+    /**
+     * Takes out the values that a write under the given change version replaced or deleted.
+     */
+    public void removed(ActivitySummary activity, long changeVersion) {
+        apply(new Delta(activity.getType(), activity.getParticipants(), -1, changeVersion));
+    }
+
+    public ActivityStats getStats() {
+        return counters.toStats();
+    }
+
+    /**
+     * Schedules a recount after the configured delay. Requests made while one is pending are merged into it.
+     */
+    public void reconcileSoon() {
+        if (!reconcileScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        taskScheduler.schedule(() -> {
+            reconcileScheduled.set(false);
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                // The next periodic recount retries
+                log.warn("Could not recount activity statistics", e);
+            }
+        }, Instant.now().plus(properties.getRecountDelay()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${activity-manager.stats.reconcile-interval:PT5M}",
+            initialDelayString = "${activity-manager.stats.reconcile-interval:PT5M}")
+    public void reconcile() {
+        reconcileLock.lock();
+        try {
+            setRecordedDeltas(new ArrayList<>());
+
+            var recounted = new Counters();
+            var fenceVersion = changeVersionTracker.runFenced(() -> {
+                for (var group : activityRepository.countByTypeAndParticipants()) {
+                    recounted.add(group.getType(), group.getParticipants(), group.getCount());
+                }
+            });
+
+            swapLock.lock();
+            try {
+                // Writes up to the fence are in the recount, even when their delta was applied after it was read
+                recordedDeltas.stream()
+                        .filter(delta -> delta.getChangeVersion() > fenceVersion)
+                        .forEach(delta -> recounted.add(delta.getType(), delta.getParticipants(), delta.getSign()));
+
+                var drift = recounted.count.sum() - counters.count.sum();
+                if (drift != 0) {
+                    log.debug("Activity count drifted by {}, corrected by recount", drift);
+                }
+                counters = recounted;
+            } finally {
+                swapLock.unlock();
+            }
+        } finally {
+            setRecordedDeltas(null);
+            reconcileLock.unlock();
+        }
+    }
+
+    private void apply(Delta delta) {
+        swapLock.lock();
+        try {
+            counters.add(delta.getType(), delta.getParticipants(), delta.getSign());
+            if (recordedDeltas != null) {
+                recordedDeltas.add(delta);
+            }
+        } finally {
+            swapLock.unlock();
+        }
+    }
+
+    private void setRecordedDeltas(List<Delta> deltas) {
+        swapLock.lock();
+        try {
+            recordedDeltas = deltas;
+        } finally {
+            swapLock.unlock();
+        }
+    }
+
+    @Value
+    private static class Delta {
+        String type;
+        Integer participants;
+        long sign;
+        long changeVersion;
+    }
+
+    private static final class Counters {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder countWithParticipants = new LongAdder();
+        private final LongAdder totalParticipants = new LongAdder();
+        // ConcurrentHashMap has no null keys, so activities without a type or participants are only in the totals
+        private final Map<String, LongAdder> countByType = new ConcurrentHashMap<>();
+        private final Map<Integer, LongAdder> countByParticipants = new ConcurrentHashMap<>();
+
+        private void add(String type, Integer participants, long delta) {
+            count.add(delta);
+            if (type != null) {
+                countByType.computeIfAbsent(type, key -> new LongAdder()).add(delta);
+            }
+            if (participants != null) {
+                countWithParticipants.add(delta);
+                totalParticipants.add(delta * participants);
+                countByParticipants.computeIfAbsent(participants, key -> new LongAdder()).add(delta);
+            }
+        }
+
+        private ActivityStats toStats() {
+            var withParticipants = countWithParticipants.sum();
+            var total = totalParticipants.sum();
+
+            return ActivityStats.builder()
+                    .count(count.sum())
+                    .totalParticipants(total)
+                    .averageParticipants(withParticipants == 0 ? null : (double) total / withParticipants)
+                    .countByType(snapshot(countByType))
+                    .countByParticipants(snapshot(countByParticipants))
+                    .build();
+        }
+
+        // Sorted for stable output; groups whose last activity was removed are left out
+        private static <K> Map<K, Long> snapshot(Map<K, LongAdder> counts) {
+            var snapshot = new TreeMap<K, Long>();
+            counts.forEach((key, adder) -> {
+                var sum = adder.sum();
+                if (sum > 0) {
+                    snapshot.put(key, sum);
+                }
+            });
+            return snapshot;
+        }
+    }
+}
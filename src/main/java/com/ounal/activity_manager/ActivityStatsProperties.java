@@ -0,0 +1,16 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.stats")
+public class ActivityStatsProperties {
+
+    // Periodic recount that corrects drift
+    private Duration reconcileInterval = Duration.ofMinutes(5);
+    // How long a requested recount waits, so a burst of writes is covered by one GROUP BY query
+    private Duration recountDelay = Duration.ofSeconds(5);
+}
@@ -0,0 +1,15 @@
+package com.ounal.activity_manager;
+
+/**
+ * The columns of an activity that the statistics are counted by, and its version, without the rest of the row.
+ */
+public interface ActivitySummary {
+
+    Long getId();
+
+    String getType();
+
+    Integer getParticipants();
+
+    Long getVersion();
+}
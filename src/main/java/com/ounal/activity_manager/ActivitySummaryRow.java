@@ -0,0 +1,16 @@
+package com.ounal.activity_manager;
+
+import lombok.Value;
+
+/**
+ * The result of the locking reads in {@link ActivityRepository}. A class of its own, not the entity, so Spring Data
+ * returns the constructed rows as they are instead of converting them to {@link Activity}.
+ */
+@Value
+public class ActivitySummaryRow implements ActivitySummary {
+
+    Long id;
+    String type;
+    Integer participants;
+    Long version;
+}
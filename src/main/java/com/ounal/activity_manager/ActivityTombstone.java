@@ -0,0 +1,25 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Records that an activity was deleted, so delta-sync clients can remove their copy.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "activity_tombstones",
+        indexes = @Index(name = "idx_activity_tombstones_change_version", columnList = "change_version"))
+public class ActivityTombstone {
+
+    @Id
+    private Long activityId;
+    @Column(name = "change_version")
+    private Long changeVersion;
+}
@@ -0,0 +1,54 @@
+package com.ounal.activity_manager;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ActivityTombstoneRepository extends JpaRepository<ActivityTombstone, Long> {
+
+    @Query("select coalesce(max(t.changeVersion), 0) from ActivityTombstone t")
+    long findMaxChangeVersion();
+
+    /**
+     * Like {@link ActivityRepository#findChangesAfter}, for the tombstones.
+     */
+    @Query("""
+            select t from ActivityTombstone t
+            where t.changeVersion <= :upTo
+              and (t.changeVersion > :afterVersion or (t.changeVersion = :afterVersion and t.activityId > :afterId))
+            order by t.changeVersion, t.activityId
+            """)
+    List<ActivityTombstone> findTombstonesAfter(@Param("afterVersion") long afterVersion,
+                                                @Param("afterId") long afterId,
+                                                @Param("upTo") long upTo,
+                                                Limit limit);
+
+    /**
+     * Records a tombstone for every activity of the given type, in one INSERT ... SELECT.
+     *
+     * @return the number of tombstones added
+     */
+    @Modifying
+    @Query("""
+            insert into ActivityTombstone (activityId, changeVersion)
+            select a.id, :changeVersion from Activity a
+            where a.type = :type
+            """)
+    int addTombstonesByType(@Param("type") String type, @Param("changeVersion") long changeVersion);
+
+    /**
+     * Removes the tombstones recorded under {@code changeVersion} whose activity still exists,
+     * e.g. because its type changed between {@link #addTombstonesByType} and the delete.
+     */
+    @Modifying
+    @Query("""
+            delete from ActivityTombstone t
+            where t.changeVersion = :changeVersion
+              and exists (select 1 from Activity a where a.id = t.activityId)
+            """)
+    int removeTombstonesOfExistingActivities(@Param("changeVersion") long changeVersion);
+}
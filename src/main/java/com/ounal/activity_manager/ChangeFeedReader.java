@@ -0,0 +1,108 @@
+package com.ounal.activity_manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads the change-version feed of {@link ActivityService#getChanges} for the in-memory stores that follow it, such as
+ * {@link ActivitySearchIndex} and {@link ActivitySnapshotStore}, and runs their catch-ups in the background.
+ */
+@Slf4j
+@Component
+public class ChangeFeedReader {
+
+    // Rows per query. Bounded by rows, since a single batch write shares one change version
+    static final int BATCH_SIZE = 1_000;
+
+    private final ActivityRepository activityRepository;
+    private final ActivityTombstoneRepository activityTombstoneRepository;
+    private final TaskExecutor catchUpExecutor;
+
+    @Autowired
+    public ChangeFeedReader(ActivityRepository activityRepository,
+                            ActivityTombstoneRepository activityTombstoneRepository,
+                            @Qualifier("applicationTaskExecutor") TaskExecutor catchUpExecutor) {
+        this.activityRepository = activityRepository;
+        this.activityTombstoneRepository = activityTombstoneRepository;
+        this.catchUpExecutor = catchUpExecutor;
+    }
+
+    /**
+     * Passes every activity changed after {@code since} and up to {@code upTo} to {@code upserted}, in change order,
+     * then the id of every activity deleted in that range to {@code deleted}. Ids are never reused, so a deletion is
+     * final even when the activity was upserted before it.
+     */
+    public void readChanges(long since, long upTo, Consumer<Activity> upserted, LongConsumer deleted) {
+        var afterVersion = since;
+        var afterId = Long.MAX_VALUE;
+        List<Activity> activities;
+        do {
+            activities = activityRepository.findChangesAfter(afterVersion, afterId, upTo, Limit.of(BATCH_SIZE));
+            for (var activity : activities) {
+                upserted.accept(activity);
+                afterVersion = activity.getChangeVersion();
+                afterId = activity.getId();
+            }
+        } while (activities.size() == BATCH_SIZE);
+
+        afterVersion = since;
+        afterId = Long.MAX_VALUE;
+        List<ActivityTombstone> tombstones;
+        do {
+            tombstones = activityTombstoneRepository.findTombstonesAfter(afterVersion, afterId, upTo,
+                    Limit.of(BATCH_SIZE));
+            for (var tombstone : tombstones) {
+                deleted.accept(tombstone.getActivityId());
+                afterVersion = tombstone.getChangeVersion();
+                afterId = tombstone.getActivityId();
+            }
+        } while (tombstones.size() == BATCH_SIZE);
+    }
+
+    /**
+     * Wraps a catch-up so it can be requested on every write event. Requests made while one is pending are merged
+     * into it, and a failed catch-up is logged and left to the next request.
+     *
+     * @param follower what the catch-up updates, for the log
+     */
+    public CatchUp newCatchUp(String follower, Runnable catchUp) {
+        return new CatchUp(follower, catchUp);
+    }
+
+    public final class CatchUp {
+
+        private final String follower;
+        private final Runnable catchUp;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private CatchUp(String follower, Runnable catchUp) {
+            this.follower = follower;
+            this.catchUp = catchUp;
+        }
+
+        public void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+
+            catchUpExecutor.execute(() -> {
+                scheduled.set(false);
+                try {
+                    catchUp.run();
+                } catch (RuntimeException e) {
+                    // The next read or write retries
+                    log.warn("Could not update the {}", follower, e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.ounal.activity_manager;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out monotonically increasing change versions to write transactions.
+ * <p>
+ * Versions are taken before a transaction commits, so a higher version can become visible before a lower one.
+ * {@link #getSafeVersion()} therefore only reports versions below the oldest transaction still in flight,
+ * which guarantees that a client reading up to it never skips a change that commits later.
+ * Versions are tracked per process, so all writes must go through a single instance.
+ * <p>
+ * {@link #runFenced(Runnable)} holds off new writes and waits for those in flight, for reads that must see exactly the
+ * changes up to one version.
+ */
+@Component
+public class ChangeVersionTracker {
+
+    private final ActivityRepository activityRepository;
+    private final ActivityTombstoneRepository activityTombstoneRepository;
+    private final ConcurrentSkipListSet<Long> inFlightVersions = new ConcurrentSkipListSet<>();
+    // Guards lastVersion and the fence together with inFlightVersions, a ReentrantLock does not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition drained = lock.newCondition();
+    private final Condition unfenced = lock.newCondition();
+    private long lastVersion;
+    private boolean fenced;
+    // Completed when the current fence is lifted, for writers that must not block while waiting for it
+    private CompletableFuture<Void> fenceLifted = CompletableFuture.completedFuture(null);
+
+    @Autowired
+    public ChangeVersionTracker(ActivityRepository activityRepository,
+                                ActivityTombstoneRepository activityTombstoneRepository) {
+        this.activityRepository = activityRepository;
+        this.activityTombstoneRepository = activityTombstoneRepository;
+    }
+
+    @PostConstruct
+    void init() {
+        lastVersion = Math.max(activityRepository.findMaxChangeVersion(),
+                activityTombstoneRepository.findMaxChangeVersion());
+    }
+
+    /**
+     * Reserves the next version. Every call must be followed by {@link #end(long)} once the transaction
+     * has committed or rolled back. Waits while a fence is up.
+     */
+    public long begin() {
+        lock.lock();
+        try {
+            while (fenced) {
+                unfenced.awaitUninterruptibly();
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #begin()}, but returns an empty result instead of waiting while a fence is up.
+     *
+     * @see #getFenceLifted()
+     */
+    public OptionalLong tryBegin() {
+        lock.lock();
+        try {
+            return fenced ? OptionalLong.empty() : OptionalLong.of(next());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void end(long version) {
+        lock.lock();
+        try {
+            inFlightVersions.remove(version);
+            if (inFlightVersions.isEmpty()) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Completes once no fence is up, immediately if there is none.
+     */
+    public CompletableFuture<Void> getFenceLifted() {
+        lock.lock();
+        try {
+            return fenceLifted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the read once every write in flight has ended, and holds off new writes until it returns, so the read sees
+     * exactly the changes up to the returned version. Must not be called while holding a version of its own.
+     *
+     * @return the version up to which every change had committed or rolled back while the read ran
+     */
+    public long runFenced(Runnable read) {
+        long version;
+        lock.lock();
+        try {
+            // One fence at a time
+            while (fenced) {
+                unfenced.awaitUninterruptibly();
+            }
+            fenced = true;
+            fenceLifted = new CompletableFuture<>();
+            while (!inFlightVersions.isEmpty()) {
+                drained.awaitUninterruptibly();
+            }
+            version = lastVersion;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            read.run();
+            return version;
+        } finally {
+            liftFence();
+        }
+    }
+
+    /**
+     * Highest version up to which every change has either committed or rolled back.
+     */
+    public long getSafeVersion() {
+        lock.lock();
+        try {
+            return inFlightVersions.isEmpty() ? lastVersion : inFlightVersions.first() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private long next() {
+        var version = ++lastVersion;
+        inFlightVersions.add(version);
+        return version;
+    }
+
+    private void liftFence() {
+        CompletableFuture<Void> lifted;
+        lock.lock();
+        try {
+            fenced = false;
+            unfenced.signalAll();
+            lifted = fenceLifted;
+        } finally {
+            lock.unlock();
+        }
+        // Outside the lock, so writers resumed by it can begin at once
+        lifted.complete(null);
+    }
+}
@@ -0,0 +1,12 @@
+package com.ounal.activity_manager;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidActivityPatchException extends RuntimeException {
+
+    public InvalidActivityPatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,200 @@
+package com.ounal.activity_manager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of random activities prefetched from the Bored API in the background,
+ * so that creating a random activity does not usually wait for the upstream.
+ * Refills, and the extra fetches for a batch that misses the pool, run on the application task executor, which uses
+ * virtual threads when they are enabled.
+ */
+@Slf4j
+@Component
+public class RandomActivityPool {
+
+    private final RestTemplate restTemplate;
+    private final String randomActivityUrl;
+    private final RandomActivityPoolProperties properties;
+    private final BlockingQueue<ActivityDto> activityDtos;
+    private final TaskExecutor refillExecutor;
+    private final AtomicInteger activeRefills = new AtomicInteger();
+    // System.nanoTime() at which the pool dropped below the low-water mark, 0 when it is full
+    private final AtomicLong refillStartedAt = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter refillFailures;
+    private final Timer refillLag;
+
+    @Autowired
+    public RandomActivityPool(RestTemplate restTemplate,
+                              UpstreamProperties upstreamProperties,
+                              RandomActivityPoolProperties properties,
+                              MeterRegistry meterRegistry,
+                              @Qualifier("applicationTaskExecutor") TaskExecutor refillExecutor) {
+        this.restTemplate = restTemplate;
+        this.randomActivityUrl = upstreamProperties.getRandomActivityUrl();
+        this.properties = properties;
+        this.activityDtos = new ArrayBlockingQueue<>(properties.getCapacity());
+        this.refillExecutor = refillExecutor;
+
+        this.hits = Counter.builder("activity.random.pool.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("activity.random.pool.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.refillFailures = Counter.builder("activity.random.pool.refill.failures")
+                .register(meterRegistry);
+        this.refillLag = Timer.builder("activity.random.pool.refill.lag")
+                .description("Time from dropping to the low-water mark until the pool is full again")
+                .register(meterRegistry);
+        Gauge.builder("activity.random.pool.size", activityDtos, BlockingQueue::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a prefetched activity, or fetches one synchronously when the pool is empty.
+     * Returns null if the upstream answered without a body.
+     */
+    public ActivityDto take() {
+        var activityDtos = take(1);
+        return activityDtos.isEmpty() ? null : activityDtos.get(0);
+    }
+
+    /**
+     * Returns up to {@code count} activities, prefetched ones first. The rest are fetched with at most
+     * {@code fetchConcurrency} concurrent upstream requests, one of them on the calling thread.
+     * Fewer are returned if the upstream answered without a body, or failed after some were obtained.
+     *
+     * @throws RestClientException if fetching failed and no activity was obtained
+     */
+    public List<ActivityDto> take(int count) {
+        var taken = new ArrayList<ActivityDto>(count);
+
+        if (properties.isEnabled()) {
+            activityDtos.drainTo(taken, count);
+            hits.increment(taken.size());
+            misses.increment(count - taken.size());
+        }
+
+        if (taken.size() < count) {
+            taken.addAll(fetchConcurrently(count - taken.size()));
+        }
+
+        if (properties.isEnabled() && activityDtos.size() <= properties.getLowWaterMark()) {
+            startRefill();
+        }
+
+        return taken;
+    }
+
+    private void startRefill() {
+        refillStartedAt.compareAndSet(0, System.nanoTime());
+
+        var active = activeRefills.get();
+        while (active < properties.getRefillConcurrency()) {
+            if (activeRefills.compareAndSet(active, active + 1)) {
+                try {
+                    refillExecutor.execute(this::refill);
+                } catch (RejectedExecutionException e) {
+                    activeRefills.decrementAndGet();
+                    return;
+                }
+            }
+            active = activeRefills.get();
+        }
+    }
+
+    private void refill() {
+        try {
+            while (activityDtos.remainingCapacity() > 0) {
+                var activityDto = fetch();
+                if (activityDto == null || !activityDtos.offer(activityDto)) {
+                    break;
+                }
+            }
+
+            if (activityDtos.remainingCapacity() == 0) {
+                var startedAt = refillStartedAt.getAndSet(0);
+                if (startedAt != 0) {
+                    refillLag.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            }
+        } catch (RestClientException e) {
+            refillFailures.increment();
+            log.warn("Failed to prefetch random activity", e);
+        } finally {
+            activeRefills.decrementAndGet();
+        }
+    }
+
+    private List<ActivityDto> fetchConcurrently(int count) {
+        var remaining = new AtomicInteger(count);
+        var fetched = new ConcurrentLinkedQueue<ActivityDto>();
+        Runnable worker = () -> {
+            while (remaining.getAndDecrement() > 0) {
+                var activityDto = fetch();
+                if (activityDto != null) {
+                    fetched.add(activityDto);
+                }
+            }
+        };
+
+        var helpers = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 1; i < Math.min(count, properties.getFetchConcurrency()); i++) {
+            helpers.add(CompletableFuture.runAsync(worker, refillExecutor));
+        }
+
+        // A failed worker stops, and the others take over its share
+        RestClientException failure = null;
+        try {
+            worker.run();
+        } catch (RestClientException e) {
+            failure = e;
+        }
+        for (var helper : helpers) {
+            try {
+                helper.join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof RestClientException cause)) {
+                    throw e;
+                }
+                if (failure == null) {
+                    failure = cause;
+                }
+            }
+        }
+
+        if (failure != null && fetched.isEmpty()) {
+            throw failure;
+        }
+        return new ArrayList<>(fetched);
+    }
+
+    private ActivityDto fetch() {
+        return restTemplate.getForObject(randomActivityUrl, ActivityDto.class);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.random-pool")
+public class RandomActivityPoolProperties {
+
+    private boolean enabled = true;
+    // Maximum number of prefetched activities
+    private int capacity = 20;
+    // A refill starts once the pool holds this many activities or fewer
+    private int lowWaterMark = 5;
+    // Maximum number of concurrent upstream requests used for refilling
+    private int refillConcurrency = 2;
+    // Maximum number of concurrent upstream requests made to serve one batch of random activity requests
+    private int fetchConcurrency = 4;
+    // Longest a random activity request that arrives while a batch is in flight waits for it before its own batch runs
+    private Duration coalesceWindow = Duration.ofMillis(10);
+    // Maximum number of random activity requests served by one batch
+    private int maxCoalescedRequests = 50;
+}
@@ -0,0 +1,145 @@
+package com.ounal.activity_manager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Serves concurrent calls in batches. A call that finds no batch in flight runs at once, as a batch of its own.
+ * Calls that arrive while one is in flight join the next batch, which runs once every batch in flight has completed,
+ * or at the latest when the window has passed since its first caller arrived. Each batch runs the batch function once
+ * for all of its callers and hands each caller its own result.
+ * A batch that reaches the maximum size runs at once, and the next caller starts a new one.
+ */
+class RequestCoalescer<T> {
+
+    private final Duration window;
+    private final int maxBatchSize;
+    // Called with the number of callers, returns at most one result per caller
+    private final IntFunction<List<T>> batchFunction;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by the lock
+    private int batchesInFlight;
+    // The batch that new callers join while others are in flight, null when there is none
+    private Batch<T> openBatch;
+
+    RequestCoalescer(Duration window, int maxBatchSize, IntFunction<List<T>> batchFunction) {
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchFunction = batchFunction;
+    }
+
+    /**
+     * Returns this caller's result, or null if the batch function returned fewer results than there were callers.
+     * A failure of the batch function is thrown to every caller of the batch.
+     */
+    T call() {
+        var result = new CompletableFuture<T>();
+        Batch<T> ledBatch = null;
+        var waitForWindow = false;
+
+        lock.lock();
+        try {
+            if (batchesInFlight == 0 && openBatch == null) {
+                ledBatch = new Batch<>(1);
+                batchesInFlight++;
+            } else if (openBatch == null) {
+                openBatch = new Batch<>(maxBatchSize);
+                ledBatch = openBatch;
+                waitForWindow = true;
+            }
+
+            var batch = ledBatch != null ? ledBatch : openBatch;
+            batch.callers.add(result);
+            if (batch == openBatch && batch.callers.size() >= maxBatchSize) {
+                // Full, so nobody else joins and its leader need not wait any longer
+                openBatch = null;
+                batch.ready.complete(null);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (ledBatch != null) {
+            if (waitForWindow) {
+                awaitWindow(ledBatch);
+            }
+            run(ledBatch);
+        }
+
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Waits until the batches in flight have completed, the batch is full or the window has passed
+    private void awaitWindow(Batch<T> batch) {
+        try {
+            batch.ready.get(window.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Run the batch with whoever has joined so far
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Nobody can join once the batch is closed, so its size no longer changes
+        lock.lock();
+        try {
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+            batchesInFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Batch<T> batch) {
+        var callers = batch.callers;
+        try {
+            var results = batchFunction.apply(callers.size());
+            for (var i = 0; i < callers.size(); i++) {
+                callers.get(i).complete(i < results.size() ? results.get(i) : null);
+            }
+        } catch (RuntimeException e) {
+            callers.forEach(result -> result.completeExceptionally(e));
+        } finally {
+            // Never leave a caller waiting, whatever went wrong
+            callers.forEach(result -> result.completeExceptionally(
+                    new IllegalStateException("Coalesced request was not completed")));
+
+            lock.lock();
+            try {
+                batchesInFlight--;
+                if (batchesInFlight == 0 && openBatch != null) {
+                    openBatch.ready.complete(null);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Batch<T> {
+
+        private final List<CompletableFuture<T>> callers;
+        // Completed when the batch should run before its window has passed
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+        private Batch(int capacity) {
+            this.callers = new ArrayList<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.ounal.activity_manager;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fails upstream requests fast with {@link UpstreamUnavailableException} after repeated failures,
+ * instead of letting every request wait for timeouts. Connection errors and 5xx responses count as failures.
+ * Once the open duration has passed, a single trial request decides whether the circuit closes again.
+ */
+public class UpstreamCircuitBreaker implements ClientHttpRequestInterceptor {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // Epoch millis until which the circuit is open, 0 when closed
+    private final AtomicLong openUntil = new AtomicLong();
+    private final AtomicBoolean trialInProgress = new AtomicBoolean();
+
+    public UpstreamCircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    @Override
+    @NonNull
+    public ClientHttpResponse intercept(@NonNull HttpRequest request,
+                                        @NonNull byte[] body,
+                                        @NonNull ClientHttpRequestExecution execution) throws IOException {
+        var trial = acquirePermission(request);
+
+        try {
+            var response = execution.execute(request, body);
+            if (response.getStatusCode().is5xxServerError()) {
+                onFailure(trial);
+            } else {
+                onSuccess();
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            onFailure(trial);
+            throw e;
+        }
+    }
+
+    public State getState() {
+        var until = openUntil.get();
+        if (until == 0) {
+            return State.CLOSED;
+        }
+        return clock.millis() < until ? State.OPEN : State.HALF_OPEN;
+    }
+
+    // Returns true if the request is the trial request of a half-open circuit
+    private boolean acquirePermission(HttpRequest request) {
+        var state = getState();
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (state == State.HALF_OPEN && trialInProgress.compareAndSet(false, true)) {
+            return true;
+        }
+        throw new UpstreamUnavailableException("Circuit breaker is open for " + request.getURI().getHost());
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        openUntil.set(0);
+        trialInProgress.set(false);
+    }
+
+    private void onFailure(boolean trial) {
+        if (trial || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil.set(clock.millis() + openDuration.toMillis());
+            trialInProgress.set(false);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.ounal.activity_manager;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "activity-manager.upstream")
+public class UpstreamProperties {
+
+    private String randomActivityUrl = ActivityService.BORED_API_GET_RANDOM_ACTIVITY_URL;
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    // Maximum time between two packets of a response
+    private Duration readTimeout = Duration.ofSeconds(5);
+    // Maximum time to wait for a free connection from the pool
+    private Duration connectionRequestTimeout = Duration.ofSeconds(1);
+    private Duration connectionTimeToLive = Duration.ofMinutes(5);
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private int maxConnections = 50;
+    private int maxConnectionsPerRoute = 20;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    @Data
+    public static class CircuitBreaker {
+
+        // Consecutive failures that open the circuit
+        private int failureThreshold = 5;
+        // How long the circuit stays open before a single trial request is let through
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+}
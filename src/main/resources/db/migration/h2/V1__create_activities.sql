@@ -0,0 +1,20 @@
+create sequence activities_seq start with 1 increment by 50;
+
+create table activities (
+    id             bigint not null,
+    name           varchar(255),
+    type           varchar(255),
+    participants   integer,
+    change_version bigint,
+    primary key (id)
+);
+
+create index idx_activities_change_version on activities (change_version);
+
+create table activity_tombstones (
+    activity_id    bigint not null,
+    change_version bigint,
+    primary key (activity_id)
+);
+
+create index idx_activity_tombstones_change_version on activity_tombstones (change_version);
@@ -0,0 +1,2 @@
+-- Optimistic locking, incremented on every update
+alter table activities add column version bigint default 0 not null;
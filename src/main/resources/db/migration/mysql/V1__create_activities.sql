@@ -0,0 +1,26 @@
+-- MySQL has no sequences, so activities_seq is emulated with a table. Its pooled
+-- allocation still hands out 50 ids per round trip, which keeps inserts batchable.
+create table activities_seq (
+    next_val bigint
+) engine = InnoDB;
+
+insert into activities_seq values (1);
+
+create table activities (
+    id             bigint not null,
+    name           varchar(255),
+    type           varchar(255),
+    participants   integer,
+    change_version bigint,
+    primary key (id)
+) engine = InnoDB;
+
+create index idx_activities_change_version on activities (change_version);
+
+create table activity_tombstones (
+    activity_id    bigint not null,
+    change_version bigint,
+    primary key (activity_id)
+) engine = InnoDB;
+
+create index idx_activity_tombstones_change_version on activity_tombstones (change_version);
@@ -0,0 +1,7 @@
+-- Type filter with keyset pagination: equality on type, then range and order on id.
+-- Participants is the last column so the participant range is checked in the index
+-- before a row is read.
+create index idx_activities_type_id_participants on activities (type, id, participants);
+
+-- Name prefix search, in name order
+create index idx_activities_name_id on activities (name, id);
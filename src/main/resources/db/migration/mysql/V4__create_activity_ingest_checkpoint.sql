@@ -0,0 +1,8 @@
+-- Journal sequence up to which queued activities are committed, updated in the same transaction as their insert
+create table activity_ingest_checkpoint (
+    id                 integer not null,
+    committed_sequence bigint  not null,
+    primary key (id)
+) engine = InnoDB;
+
+insert into activity_ingest_checkpoint values (1, 0);
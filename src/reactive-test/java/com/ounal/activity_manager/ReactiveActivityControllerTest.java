@@ -0,0 +1,257 @@
+package com.ounal.activity_manager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.ounal.activity_manager.ActivityTestHelper.generateTestActivities;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+/**
+ * The cases of {@link ActivityControllerTest} for the endpoints that {@link ReactiveActivityController} serves.
+ */
+@ExtendWith(SpringExtension.class)
+@WebFluxTest(ReactiveActivityController.class)
+@ActiveProfiles(AppConfig.REACTIVE_PROFILE)
+public class ReactiveActivityControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private ReactiveActivityService activityService;
+
+    @BeforeEach
+    void setUp() {
+        given(activityService.getTableVersionTag())
+                .willReturn("test-1");
+    }
+
+    @Test
+    public void whenCreateActivity_thenReturnActivity() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.createActivity(expectedActivity))
+                .willReturn(Mono.just(expectedActivity));
+
+        webTestClient.post()
+                .uri("/activities")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(expectedActivity)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Activity.class).isEqualTo(expectedActivity);
+    }
+
+    @Test
+    public void whenCreateRandomActivity_thenReturnActivity() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.createRandomActivity())
+                .willReturn(Mono.just(expectedActivity));
+
+        webTestClient.post()
+                .uri("/activities/random")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Activity.class).isEqualTo(expectedActivity);
+    }
+
+    @Test
+    public void givenActivityExists_whenGetActivity_thenReturnActivity() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.getActivity(1L))
+                .willReturn(Mono.just(expectedActivity));
+
+        webTestClient.get()
+                .uri("/activities/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Activity.class).isEqualTo(expectedActivity);
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenGetActivity_thenReturnNotFound() {
+        given(activityService.getActivity(1L))
+                .willReturn(Mono.error(new ActivityNotFoundException(1L)));
+
+        webTestClient.get()
+                .uri("/activities/1")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void whenGetActivitiesWithParameters_thenCallServiceWithParameters() {
+        given(activityService.getActivities(any(), anyInt(), any()))
+                .willReturn(Mono.just(new ActivityPage(List.of(), null)));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/activities")
+                        .queryParam("after", 7)
+                        .queryParam("limit", 20)
+                        .queryParam("type", "Activity type 1")
+                        .queryParam("minParticipants", 2)
+                        .queryParam("maxParticipants", 4)
+                        .build())
+                .exchange()
+                .expectStatus().isOk();
+
+        var expectedFilter = ActivityFilter.builder()
+                .type("Activity type 1")
+                .minParticipants(2)
+                .maxParticipants(4)
+                .build();
+
+        then(activityService)
+                .should()
+                .getActivities(7L, 20, expectedFilter);
+    }
+
+    @Test
+    public void givenActivities_whenGetActivities_thenReturnPageWithETag() {
+        given(activityService.getActivities(null, ActivityService.DEFAULT_PAGE_SIZE, new ActivityFilter()))
+                .willReturn(Mono.just(new ActivityPage(generateTestActivities(), 2L)));
+
+        webTestClient.get()
+                .uri("/activities")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"test-1\"")
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(2)
+                .jsonPath("$.nextCursor").isEqualTo(2);
+    }
+
+    @Test
+    public void givenMatchingETag_whenGetActivities_thenReturnNotModifiedWithoutCallingService() {
+        webTestClient.get()
+                .uri("/activities")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"test-1\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        then(activityService)
+                .should(never())
+                .getActivities(any(), anyInt(), any());
+    }
+
+    @Test
+    public void givenMatchingETag_whenGetActivity_thenReturnNotModifiedWithoutLoadingActivity() {
+        given(activityService.getActivityVersion(1L))
+                .willReturn(Mono.just(3L));
+
+        webTestClient.get()
+                .uri("/activities/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        then(activityService)
+                .should(never())
+                .getActivity(any());
+    }
+
+    @Test
+    public void givenIfMatch_whenUpdateActivity_thenPassVersionAndReturnNewETag() {
+        var expectedActivity = generateTestActivities().get(0);
+        var updatedActivity = generateTestActivities().get(0);
+        updatedActivity.setVersion(4L);
+
+        given(activityService.updateActivity(1L, expectedActivity, 3L))
+                .willReturn(Mono.just(updatedActivity));
+
+        webTestClient.put()
+                .uri("/activities/1")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(expectedActivity)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"");
+    }
+
+    @Test
+    public void givenStaleIfMatch_whenUpdateActivity_thenReturnPreconditionFailed() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.updateActivity(1L, expectedActivity, 2L))
+                .willReturn(Mono.error(new ActivityPreconditionFailedException(1L)));
+
+        webTestClient.put()
+                .uri("/activities/1")
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(expectedActivity)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenDeleteActivity_thenReturnOk() {
+        given(activityService.deleteActivity(1L))
+                .willReturn(Mono.just(false));
+
+        webTestClient.delete()
+                .uri("/activities/1")
+                .exchange()
+                .expectStatus().isOk();
+
+        then(activityService)
+                .should()
+                .deleteActivity(1L);
+    }
+
+    @Test
+    public void whenCreateActivities_thenReturnBatchResults() {
+        var activities = generateTestActivities();
+
+        given(activityService.createActivities(activities))
+                .willReturn(Mono.just(List.of(
+                        ActivityBatchResult.builder().id(1L).status(ActivityBatchResult.Status.CREATED).build(),
+                        ActivityBatchResult.builder().id(2L).status(ActivityBatchResult.Status.CREATED).build())));
+
+        webTestClient.post()
+                .uri("/activities/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(activities)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].status").isEqualTo("CREATED");
+    }
+
+    @Test
+    public void whenExportActivities_thenStreamNdjson() {
+        given(activityService.exportActivities())
+                .willReturn(Flux.fromIterable(generateTestActivities()));
+
+        webTestClient.get()
+                .uri("/activities/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Activity.class).isEqualTo(generateTestActivities());
+    }
+}
@@ -0,0 +1,189 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+import static com.ounal.activity_manager.ActivityTestHelper.generateTestActivities;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveActivityServiceTest {
+
+    @Mock
+    private ReactiveActivityRepository activityRepository;
+    @Mock
+    private ChangeVersionTracker changeVersionTracker;
+    @Mock
+    private ActivityStatsCounters activityStatsCounters;
+    @Mock
+    private WebClient upstreamWebClient;
+    @Mock
+    private UpstreamProperties upstreamProperties;
+    @Mock
+    private TransactionalOperator transactionalOperator;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @InjectMocks
+    private ReactiveActivityService activityService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Run the write without a real transaction
+        lenient().when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(changeVersionTracker.tryBegin())
+                .thenReturn(OptionalLong.of(7L));
+    }
+
+    @Test
+    public void whenCreateActivity_thenInsertWithIdAndChangeVersionAndPublishCreatedEvent() {
+        var activity = generateTestActivities().get(0);
+
+        given(activityRepository.assignIds(List.of(activity)))
+                .willAnswer(invocation -> Mono.fromRunnable(() -> activity.setId(51L)));
+        given(activityRepository.insert(activity))
+                .willReturn(Mono.just(activity));
+
+        var createdActivity = activityService.createActivity(activity).block();
+
+        BDDAssertions.then(createdActivity.getId())
+                .isEqualTo(51L);
+        BDDAssertions.then(createdActivity.getChangeVersion())
+                .isEqualTo(7L);
+        BDDAssertions.then(createdActivity.getVersion())
+                .isZero();
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(7L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(activity, 7L);
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.created(activity));
+    }
+
+    @Test
+    public void givenStaleVersion_whenUpdateActivity_thenThrowPreconditionFailed() {
+        var activity = generateTestActivities().get(0);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Mono.just(summary(3L)));
+
+        var thrown = catchThrowable(() -> activityService.updateActivity(1L, activity, 2L).block());
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityPreconditionFailedException.class);
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(7L);
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .updateById(any(), any(), anyLong(), any());
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(any());
+    }
+
+    @Test
+    public void whenUpdateActivity_thenReturnActivityWithNextVersionAndMoveStats() {
+        var activity = generateTestActivities().get(0);
+        var previous = summary(2L);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Mono.just(previous));
+        given(activityRepository.updateById(1L, activity, 7L, 2L))
+                .willReturn(Mono.just(1L));
+
+        var updatedActivity = activityService.updateActivity(1L, activity, 2L).block();
+
+        BDDAssertions.then(updatedActivity.getId())
+                .isEqualTo(1L);
+        BDDAssertions.then(updatedActivity.getVersion())
+                .isEqualTo(3L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(previous, 7L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(updatedActivity, 7L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.updated(updatedActivity));
+    }
+
+    @Test
+    public void whenDeleteActivity_thenAddTombstoneAndPublishDeletedEvent() {
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Mono.just(summary(3L)));
+        given(activityRepository.removeById(1L))
+                .willReturn(Mono.just(1L));
+        given(activityRepository.addTombstone(1L, 7L))
+                .willReturn(Mono.just(1L));
+
+        var deleted = activityService.deleteActivity(1L).block();
+
+        BDDAssertions.then(deleted)
+                .isTrue();
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(Activity.builder().id(1L).type("Activity type 2").participants(5).build(), 7L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.deleted(1L, 7L));
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenDeleteActivity_thenReturnFalseWithoutTombstone() {
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Mono.empty());
+
+        var deleted = activityService.deleteActivity(1L).block();
+
+        BDDAssertions.then(deleted)
+                .isFalse();
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .removeById(any());
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .addTombstone(any(), anyLong());
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(7L);
+    }
+
+    private static ActivitySummary summary(Long version) {
+        return Activity.builder()
+                .id(1L)
+                .type("Activity type 2")
+                .participants(5)
+                .version(version)
+                .build();
+    }
+}
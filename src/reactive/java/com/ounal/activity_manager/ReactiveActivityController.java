@@ -0,0 +1,153 @@
+package com.ounal.activity_manager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@code /activities} contract of {@link ActivityController} on WebFlux, served with the reactive profile.
+ * Covers creating, reading, updating and deleting activities one at a time, creating them in batches, random
+ * activities, name prefix lookups and the export. The other endpoints are only served by the servlet stack.
+ */
+@RestController
+@RequestMapping("/activities")
+@Profile(AppConfig.REACTIVE_PROFILE)
+public class ReactiveActivityController {
+
+    private final ReactiveActivityService activityService;
+
+    @Autowired
+    public ReactiveActivityController(ReactiveActivityService activityService) {
+        this.activityService = activityService;
+    }
+
+    @PostMapping
+    public Mono<Activity> createActivity(@RequestBody Activity activity) {
+        return activityService.createActivity(activity);
+    }
+
+    @PostMapping("/batch")
+    public Mono<List<ActivityBatchResult>> createActivities(@RequestBody List<Activity> activities) {
+        return activityService.createActivities(activities);
+    }
+
+    @PostMapping("/random")
+    public Mono<Activity> createRandomActivity() {
+        return activityService.createRandomActivity();
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<ActivityPage>> getActivities(@RequestParam(required = false) Long after,
+                                                            @RequestParam(defaultValue = "" + ActivityService.DEFAULT_PAGE_SIZE) int limit,
+                                                            @RequestParam(required = false) String type,
+                                                            @RequestParam(required = false) Integer minParticipants,
+                                                            @RequestParam(required = false) Integer maxParticipants,
+                                                            ServerWebExchange exchange) {
+        var eTag = ActivityController.tableETag(activityService.getTableVersionTag());
+        if (exchange.checkNotModified(eTag)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .build());
+        }
+
+        var filter = ActivityFilter.builder()
+                .type(type)
+                .minParticipants(minParticipants)
+                .maxParticipants(maxParticipants)
+                .build();
+
+        return activityService.getActivities(after, limit, filter)
+                .map(page -> withETag(page, eTag));
+    }
+
+    // Collected, because the CBOR encoder can only write single values. The list is bounded by the page size.
+    @GetMapping("/by-name")
+    public Mono<List<Activity>> getActivitiesByNamePrefix(@RequestParam String prefix,
+                                                          @RequestParam(defaultValue = "" + ActivityService.DEFAULT_PAGE_SIZE) int limit) {
+        return activityService.getActivitiesByNamePrefix(prefix, limit)
+                .collectList();
+    }
+
+    // Tagged with the activity's own version. See ActivityController#getActivity.
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Activity>> getActivity(@PathVariable Long id, ServerWebExchange exchange) {
+        if (exchange.getRequest().getHeaders().getIfNoneMatch().isEmpty()) {
+            return loadActivity(id);
+        }
+
+        return activityService.getActivityVersion(id)
+                .flatMap(version -> {
+                    var eTag = ActivityController.versionETag(version);
+                    if (exchange.checkNotModified(eTag)) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(eTag)
+                                .<Activity>build());
+                    }
+                    return loadActivity(id);
+                });
+    }
+
+    // Rows are streamed as the client reads them, without buffering the table
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Activity> exportActivities() {
+        return activityService.exportActivities();
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<Activity>> updateActivity(@PathVariable Long id,
+                                                         @RequestBody Activity activity,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var versions = ActivityController.parseVersionETags(ifMatch);
+        var updated = versions == null
+                ? activityService.updateActivity(id, activity, null)
+                : expectedVersion(id, versions)
+                        .flatMap(expectedVersion -> activityService.updateActivity(id, activity, expectedVersion));
+
+        return updated
+                .map(updatedActivity -> ResponseEntity.ok()
+                        .eTag(ActivityController.versionETag(updatedActivity.getVersion()))
+                        .body(updatedActivity));
+    }
+
+    // Answers 200 whether or not the activity existed, so a retried delete does not look like a failure
+    @DeleteMapping("/{id}")
+    public Mono<Void> deleteActivity(@PathVariable Long id) {
+        return activityService.deleteActivity(id)
+                .then();
+    }
+
+    private Mono<ResponseEntity<Activity>> loadActivity(Long id) {
+        return activityService.getActivity(id)
+                .map(activity -> withETag(activity, ActivityController.versionETag(activity.getVersion())));
+    }
+
+    // See ActivityController#expectedVersion
+    private Mono<Long> expectedVersion(Long id, Set<Long> versions) {
+        if (versions.size() > 1) {
+            return activityService.getActivityVersion(id)
+                    .map(currentVersion -> versions.contains(currentVersion)
+                            ? currentVersion
+                            : ActivityController.NO_VERSION);
+        }
+        return Mono.just(versions.isEmpty() ? ActivityController.NO_VERSION : versions.iterator().next());
+    }
+
+    private static <T> ResponseEntity<T> withETag(T body, String eTag) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(eTag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body);
+    }
+}
@@ -0,0 +1,264 @@
+package com.ounal.activity_manager;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * R2DBC access to the {@code activities} table for the reactive stack, with the same statements as
+ * {@link ActivityRepository}. Ids are taken from {@code activities_seq} in the same blocks as Hibernate's pooled
+ * generator, so rows written by either stack never collide.
+ */
+@Repository
+@Profile(AppConfig.REACTIVE_PROFILE)
+public class ReactiveActivityRepository {
+
+    // Matches the allocationSize of the activities_seq generator on Activity
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    private static final String COLUMNS = "id, name, type, participants, change_version, version";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    // MySQL has no sequences, activities_seq is a table there
+    private final boolean sequenceTable;
+    // Guards the current block of ids, a ReentrantLock does not pin virtual threads
+    private final ReentrantLock idLock = new ReentrantLock();
+    private long nextId = 1;
+    private long lastId = 0;
+
+    @Autowired
+    public ReactiveActivityRepository(DatabaseClient databaseClient,
+                                      ConnectionFactory connectionFactory,
+                                      TransactionalOperator reactiveTransactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = reactiveTransactionalOperator;
+        this.sequenceTable = connectionFactory.getMetadata().getName().toLowerCase().contains("mysql");
+    }
+
+    public Mono<Activity> findById(Long id) {
+        return databaseClient.sql("select " + COLUMNS + " from activities where id = :id")
+                .bind("id", id)
+                .map(ReactiveActivityRepository::toActivity)
+                .one();
+    }
+
+    /**
+     * Like {@link ActivityRepository#findPage} and {@link ActivityRepository#findPageByType}, so the same indexes
+     * serve both stacks.
+     */
+    public Flux<Activity> findPage(long after, ActivityFilter filter, int limit) {
+        var spec = databaseClient.sql("select " + COLUMNS + " from activities where "
+                        + (filter.getType() == null ? "" : "type = :type and ")
+                        + """
+                        id > :after
+                          and (:minParticipants is null or participants >= :minParticipants)
+                          and (:maxParticipants is null or participants <= :maxParticipants)
+                        order by id
+                        limit :limit
+                        """)
+                .bind("after", after)
+                .bind("minParticipants", Parameter.fromOrEmpty(filter.getMinParticipants(), Integer.class))
+                .bind("maxParticipants", Parameter.fromOrEmpty(filter.getMaxParticipants(), Integer.class))
+                .bind("limit", limit);
+        if (filter.getType() != null) {
+            spec = spec.bind("type", filter.getType());
+        }
+
+        return spec.map(ReactiveActivityRepository::toActivity)
+                .all();
+    }
+
+    /**
+     * Served by {@code idx_activities_name_id}.
+     */
+    public Flux<Activity> findByNamePrefix(String prefix, int limit) {
+        return databaseClient.sql("select " + COLUMNS + " from activities where name like :pattern order by name, id limit :limit")
+                .bind("pattern", escapeLike(prefix) + "%")
+                .bind("limit", limit)
+                .map(ReactiveActivityRepository::toActivity)
+                .all();
+    }
+
+    /**
+     * Every activity in id order. Rows are read as the subscriber requests them.
+     */
+    public Flux<Activity> findAll() {
+        return databaseClient.sql("select " + COLUMNS + " from activities order by id")
+                .map(ReactiveActivityRepository::toActivity)
+                .all();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return databaseClient.sql("select 1 from activities where id = :id")
+                .bind("id", id)
+                .map(row -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
+
+    public Mono<Long> findVersionById(Long id) {
+        return databaseClient.sql("select version from activities where id = :id")
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    /**
+     * See {@link ActivityRepository#findSummaryById}. Must run inside the write's transaction.
+     */
+    public Mono<ActivitySummary> findSummaryById(Long id) {
+        return databaseClient.sql("select id, type, participants, version from activities where id = :id for update")
+                .bind("id", id)
+                .map(row -> (ActivitySummary) Activity.builder()
+                        .id(row.get("id", Long.class))
+                        .type(row.get("type", String.class))
+                        .participants(row.get("participants", Integer.class))
+                        .version(row.get("version", Long.class))
+                        .build())
+                .one();
+    }
+
+    /**
+     * Sets a new id on each activity. Call outside the write transaction, so the sequence is not held by it.
+     */
+    public Mono<Void> assignIds(List<Activity> activities) {
+        return Flux.fromIterable(activities)
+                .concatMap(activity -> nextId().doOnNext(activity::setId))
+                .then();
+    }
+
+    /**
+     * Inserts the activity with the id, change version and version already set on it.
+     */
+    public Mono<Activity> insert(Activity activity) {
+        return databaseClient.sql("""
+                        insert into activities (id, name, type, participants, change_version, version)
+                        values (:id, :name, :type, :participants, :changeVersion, :version)
+                        """)
+                .bind("id", activity.getId())
+                .bind("name", Parameter.fromOrEmpty(activity.getName(), String.class))
+                .bind("type", Parameter.fromOrEmpty(activity.getType(), String.class))
+                .bind("participants", Parameter.fromOrEmpty(activity.getParticipants(), Integer.class))
+                .bind("changeVersion", activity.getChangeVersion())
+                .bind("version", activity.getVersion())
+                .fetch()
+                .rowsUpdated()
+                .thenReturn(activity);
+    }
+
+    /**
+     * See {@link ActivityRepository#updateById}.
+     *
+     * @return the number of rows updated, 0 if the activity does not exist or is at another version
+     */
+    public Mono<Long> updateById(Long id, Activity activity, long changeVersion, Long expectedVersion) {
+        return databaseClient.sql("""
+                        update activities
+                        set name = :name,
+                            type = :type,
+                            participants = :participants,
+                            change_version = :changeVersion,
+                            version = version + 1
+                        where id = :id
+                          and (:expectedVersion is null or version = :expectedVersion)
+                        """)
+                .bind("id", id)
+                .bind("name", Parameter.fromOrEmpty(activity.getName(), String.class))
+                .bind("type", Parameter.fromOrEmpty(activity.getType(), String.class))
+                .bind("participants", Parameter.fromOrEmpty(activity.getParticipants(), Integer.class))
+                .bind("changeVersion", changeVersion)
+                .bind("expectedVersion", Parameter.fromOrEmpty(expectedVersion, Long.class))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * @return 1 if the activity was deleted, 0 if it did not exist
+     */
+    public Mono<Long> removeById(Long id) {
+        return databaseClient.sql("delete from activities where id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> addTombstone(Long activityId, long changeVersion) {
+        return databaseClient.sql("insert into activity_tombstones (activity_id, change_version) values (:activityId, :changeVersion)")
+                .bind("activityId", activityId)
+                .bind("changeVersion", changeVersion)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<Long> nextId() {
+        idLock.lock();
+        try {
+            if (nextId <= lastId) {
+                return Mono.just(nextId++);
+            }
+        } finally {
+            idLock.unlock();
+        }
+
+        // Concurrent callers may each fetch a block, the one that is replaced loses its remaining ids
+        return nextSequenceValue().map(sequenceValue -> {
+            idLock.lock();
+            try {
+                // Like Hibernate's pooled optimizer, a sequence value is the last id of its block
+                nextId = Math.max(sequenceValue - ID_ALLOCATION_SIZE + 1, 1);
+                lastId = sequenceValue;
+                return nextId++;
+            } finally {
+                idLock.unlock();
+            }
+        });
+    }
+
+    private Mono<Long> nextSequenceValue() {
+        if (!sequenceTable) {
+            return databaseClient.sql("select next value for activities_seq")
+                    .map(row -> row.get(0, Long.class))
+                    .one();
+        }
+
+        // The same read and increment that Hibernate's table-backed sequence makes
+        return transactionalOperator.transactional(databaseClient.sql("select next_val from activities_seq for update")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(sequenceValue -> databaseClient.sql("update activities_seq set next_val = :nextValue where next_val = :sequenceValue")
+                        .bind("nextValue", sequenceValue + ID_ALLOCATION_SIZE)
+                        .bind("sequenceValue", sequenceValue)
+                        .fetch()
+                        .rowsUpdated()
+                        .thenReturn(sequenceValue)));
+    }
+
+    // H2 and MySQL both escape LIKE wildcards with a backslash by default
+    private static String escapeLike(String prefix) {
+        return prefix.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    private static Activity toActivity(Readable row) {
+        return Activity.builder()
+                .id(row.get("id", Long.class))
+                .name(row.get("name", String.class))
+                .type(row.get("type", String.class))
+                .participants(row.get("participants", Integer.class))
+                .changeVersion(row.get("change_version", Long.class))
+                .version(row.get("version", Long.class))
+                .build();
+    }
+}
@@ -0,0 +1,234 @@
+package com.ounal.activity_manager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link ActivityService} for the reactive profile, on R2DBC and {@link WebClient}.
+ * <p>
+ * Writes take their change version from the shared {@link ChangeVersionTracker}, record tombstones and publish
+ * {@link ActivityEvent}s like the blocking service, so the change feed, the search index and the statistics stay
+ * correct. Nothing is cached, the reactive stack is meant for many concurrent clients rather than repeated reads.
+ */
+@Service
+@Profile(AppConfig.REACTIVE_PROFILE)
+public class ReactiveActivityService {
+
+    private final ReactiveActivityRepository activityRepository;
+    private final ChangeVersionTracker changeVersionTracker;
+    private final ActivityStatsCounters activityStatsCounters;
+    private final WebClient upstreamWebClient;
+    private final UpstreamProperties upstreamProperties;
+    private final TransactionalOperator transactionalOperator;
+    private final ApplicationEventPublisher eventPublisher;
+    // Bumped after every write, used for ETags. The instance id keeps tags from different processes apart.
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong tableVersion = new AtomicLong();
+
+    @Autowired
+    public ReactiveActivityService(ReactiveActivityRepository activityRepository,
+                                   ChangeVersionTracker changeVersionTracker,
+                                   ActivityStatsCounters activityStatsCounters,
+                                   WebClient upstreamWebClient,
+                                   UpstreamProperties upstreamProperties,
+                                   TransactionalOperator reactiveTransactionalOperator,
+                                   ApplicationEventPublisher eventPublisher) {
+        this.activityRepository = activityRepository;
+        this.changeVersionTracker = changeVersionTracker;
+        this.activityStatsCounters = activityStatsCounters;
+        this.upstreamWebClient = upstreamWebClient;
+        this.upstreamProperties = upstreamProperties;
+        this.transactionalOperator = reactiveTransactionalOperator;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public Mono<Activity> createActivity(Activity activity) {
+        return insert(List.of(activity))
+                .map(activities -> activities.get(0))
+                .doOnNext(createdActivity -> afterWrite(ActivityEvent.created(createdActivity)));
+    }
+
+    /**
+     * Inserts the activities in transactions of {@link ActivityService#BATCH_CHUNK_SIZE} rows, like
+     * {@link ActivityService#createActivities}.
+     */
+    public Mono<List<ActivityBatchResult>> createActivities(List<Activity> activities) {
+        return Flux.fromIterable(activities)
+                .buffer(ActivityService.BATCH_CHUNK_SIZE)
+                .concatMap(chunk -> insert(chunk)
+                        .flatMapIterable(createdActivities -> createdActivities)
+                        .map(activity -> ActivityBatchResult.builder()
+                                .id(activity.getId())
+                                .status(ActivityBatchResult.Status.CREATED)
+                                .activity(activity)
+                                .build())
+                        .onErrorResume(RuntimeException.class, e -> Flux.fromIterable(chunk)
+                                .map(activity -> ActivityBatchResult.builder()
+                                        .status(ActivityBatchResult.Status.FAILED)
+                                        .error(e.getMessage())
+                                        .build())))
+                .collectList()
+                .doOnNext(results -> afterWrite(ActivityEvent.resync()));
+    }
+
+    /**
+     * Creates an activity from the Bored API, or completes empty if it answered without a body.
+     */
+    public Mono<Activity> createRandomActivity() {
+        return upstreamWebClient.get()
+                .uri(upstreamProperties.getRandomActivityUrl())
+                .retrieve()
+                .bodyToMono(ActivityDto.class)
+                .map(ActivityService::convertActivityDtoToEntity)
+                .flatMap(this::createActivity);
+    }
+
+    /**
+     * See {@link ActivityService#getTableVersionTag}.
+     */
+    public String getTableVersionTag() {
+        return instanceId + "-" + tableVersion.get();
+    }
+
+    /**
+     * See {@link ActivityService#getActivityVersion}.
+     */
+    public Mono<Long> getActivityVersion(Long id) {
+        return activityRepository.findVersionById(id)
+                .switchIfEmpty(Mono.error(() -> new ActivityNotFoundException(id)));
+    }
+
+    public Mono<Activity> getActivity(Long id) {
+        return activityRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new ActivityNotFoundException(id)));
+    }
+
+    public Mono<ActivityPage> getActivities(Long after, int limit, ActivityFilter filter) {
+        var pageSize = Math.min(Math.max(limit, 1), ActivityService.MAX_PAGE_SIZE);
+        var cursor = after == null ? 0L : after;
+
+        // Fetch one extra row to find out whether there is a next page
+        return activityRepository.findPage(cursor, filter, pageSize + 1)
+                .collectList()
+                .map(activities -> {
+                    if (activities.size() <= pageSize) {
+                        return new ActivityPage(activities, null);
+                    }
+
+                    var items = activities.subList(0, pageSize);
+                    return new ActivityPage(items, items.get(pageSize - 1).getId());
+                });
+    }
+
+    public Flux<Activity> getActivitiesByNamePrefix(String prefix, int limit) {
+        var pageSize = Math.min(Math.max(limit, 1), ActivityService.MAX_PAGE_SIZE);
+
+        return activityRepository.findByNamePrefix(prefix, pageSize);
+    }
+
+    public Flux<Activity> exportActivities() {
+        return activityRepository.findAll();
+    }
+
+    /**
+     * See {@link ActivityService#updateActivity}.
+     */
+    public Mono<Activity> updateActivity(Long id, Activity updatedActivity, Long expectedVersion) {
+        return withChangeVersion(changeVersion -> activityRepository.findSummaryById(id)
+                .switchIfEmpty(Mono.error(() -> new ActivityNotFoundException(id)))
+                .flatMap(previous -> {
+                    if (expectedVersion != null && !expectedVersion.equals(previous.getVersion())) {
+                        return Mono.<ActivitySummary>error(new ActivityPreconditionFailedException(id));
+                    }
+
+                    // The row is locked, so the update finds it at the version that was read
+                    updatedActivity.setId(id);
+                    updatedActivity.setChangeVersion(changeVersion);
+                    updatedActivity.setVersion(previous.getVersion() + 1);
+                    return activityRepository.updateById(id, updatedActivity, changeVersion, expectedVersion)
+                            .thenReturn(previous);
+                }))
+                .map(previous -> {
+                    activityStatsCounters.removed(previous, updatedActivity.getChangeVersion());
+                    activityStatsCounters.added(updatedActivity, updatedActivity.getChangeVersion());
+                    afterWrite(ActivityEvent.updated(updatedActivity));
+                    return updatedActivity;
+                });
+    }
+
+    /**
+     * Deletes the activity with a single DELETE, after a locking read of only the columns the stats are counted by,
+     * and records its tombstone in the same transaction.
+     *
+     * @return whether the activity existed
+     */
+    public Mono<Boolean> deleteActivity(Long id) {
+        return withChangeVersion(changeVersion -> activityRepository.findSummaryById(id)
+                // The row is locked, so the delete finds it as it was read
+                .flatMap(summary -> activityRepository.removeById(id)
+                        .then(activityRepository.addTombstone(id, changeVersion))
+                        // The deleted values, under the change version of the delete
+                        .thenReturn(Activity.builder()
+                                .id(id)
+                                .type(summary.getType())
+                                .participants(summary.getParticipants())
+                                .changeVersion(changeVersion)
+                                .build())))
+                .doOnNext(deleted -> {
+                    activityStatsCounters.removed(deleted, deleted.getChangeVersion());
+                    afterWrite(ActivityEvent.deleted(id, deleted.getChangeVersion()));
+                })
+                .hasElement();
+    }
+
+    private Mono<List<Activity>> insert(List<Activity> activities) {
+        // Ids first, so the sequence is not held by the write transaction
+        return activityRepository.assignIds(activities)
+                .then(withChangeVersion(changeVersion -> Flux.fromIterable(activities)
+                        .concatMap(activity -> {
+                            activity.setChangeVersion(changeVersion);
+                            activity.setVersion(0L);
+                            return activityRepository.insert(activity);
+                        })
+                        .collectList()))
+                .doOnNext(createdActivities -> createdActivities.forEach(activity ->
+                        activityStatsCounters.added(activity, activity.getChangeVersion())));
+    }
+
+    /**
+     * Runs the write in a transaction under a new change version. As around the blocking writes, the version is
+     * released once the transaction has ended, before the result reaches anything downstream.
+     */
+    private <T> Mono<T> withChangeVersion(Function<Long, Mono<T>> write) {
+        return beginChangeVersion().flatMap(changeVersion ->
+                transactionalOperator.transactional(Mono.defer(() -> write.apply(changeVersion)))
+                        .doOnSuccess(result -> changeVersionTracker.end(changeVersion))
+                        .doOnError(e -> changeVersionTracker.end(changeVersion))
+                        .doOnCancel(() -> changeVersionTracker.end(changeVersion)));
+    }
+
+    // While a stats recount holds off new writes, waits for it without blocking the calling thread
+    private Mono<Long> beginChangeVersion() {
+        return Mono.defer(() -> {
+            var changeVersion = changeVersionTracker.tryBegin();
+            return changeVersion.isPresent()
+                    ? Mono.just(changeVersion.getAsLong())
+                    : Mono.fromFuture(changeVersionTracker.getFenceLifted()).then(beginChangeVersion());
+        });
+    }
+
+    private void afterWrite(ActivityEvent event) {
+        tableVersion.incrementAndGet();
+        eventPublisher.publishEvent(event);
+    }
+}
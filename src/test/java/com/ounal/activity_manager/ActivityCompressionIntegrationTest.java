@@ -0,0 +1,78 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs on the embedded Tomcat, because MockMvc bypasses the connector that compresses responses.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "activity-manager.random-pool.enabled=false")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ActivityCompressionIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private ActivityService activityService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        activityRepository.deleteAll();
+    }
+
+    /**
+     * A full page is well over the 2 KB threshold, and its weak ETag does not stop Tomcat from compressing it.
+     */
+    @Test
+    public void testGetActivitiesCompressesLargePage() throws Exception {
+        var activities = new ArrayList<Activity>(ActivityService.DEFAULT_PAGE_SIZE);
+        for (var i = 0; i < ActivityService.DEFAULT_PAGE_SIZE; i++) {
+            activities.add(Activity.builder()
+                    .name("Activity name " + i)
+                    .type("Activity type " + i % 10)
+                    .participants(i % 8 + 1)
+                    .build());
+        }
+        activityService.createActivities(activities);
+
+        // Unlike the Apache client behind TestRestTemplate, java.net.http leaves the body and its encoding as sent
+        var response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/activities"))
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        BDDAssertions.then(response.statusCode())
+                .isEqualTo(200);
+        BDDAssertions.then(response.headers().firstValue(HttpHeaders.ETAG))
+                .hasValueSatisfying(eTag -> BDDAssertions.then(eTag).startsWith("W/\""));
+        BDDAssertions.then(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING))
+                .contains("gzip");
+        try (var body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            BDDAssertions.then(mapper.readValue(body, ActivityPage.class).getItems())
+                    .hasSize(ActivityService.DEFAULT_PAGE_SIZE);
+        }
+    }
+}
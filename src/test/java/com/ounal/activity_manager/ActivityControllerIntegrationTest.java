@@ -1,7 +1,7 @@
 package com.ounal.activity_manager;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.assertj.core.api.BDDAssertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -20,19 +21,21 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.ounal.activity_manager.ActivityService.BORED_API_GET_RANDOM_ACTIVITY_URL;
 import static com.ounal.activity_manager.ActivityTestHelper.generateTestActivities;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "activity-manager.random-pool.enabled=false")
 @AutoConfigureMockMvc
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
@@ -155,18 +158,540 @@ public class ActivityControllerIntegrationTest {
         assertGetAllContainsExactlyExpectedActivity(expectedCreatedActivity);
     }
 
+    /**
+     * Page through filtered activities using the returned cursor.
+     */
+    @Test
+    public void testGetActivitiesWithCursorAndFilter() throws Exception {
+        for (var i = 1; i <= 5; i++) {
+            activityRepository.save(Activity.builder()
+                    .name("Activity name " + i)
+                    .type(i % 2 == 0 ? "even" : "odd")
+                    .participants(i)
+                    .build());
+        }
+
+        var firstPageMvcResult = mockMvc.perform(get("/activities")
+                        .param("limit", "2")
+                        .param("type", "odd"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        var firstPage = mapper.readValue(firstPageMvcResult.getResponse().getContentAsString(), ActivityPage.class);
+
+        BDDAssertions.then(firstPage.getItems())
+                .extracting(Activity::getParticipants)
+                .containsExactly(1, 3);
+        BDDAssertions.then(firstPage.getNextCursor())
+                .isNotNull();
+
+        var secondPageMvcResult = mockMvc.perform(get("/activities")
+                        .param("limit", "2")
+                        .param("type", "odd")
+                        .param("after", firstPage.getNextCursor().toString()))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        var secondPage = mapper.readValue(secondPageMvcResult.getResponse().getContentAsString(), ActivityPage.class);
+
+        BDDAssertions.then(secondPage.getItems())
+                .extracting(Activity::getParticipants)
+                .containsExactly(5);
+        BDDAssertions.then(secondPage.getNextCursor())
+                .isNull();
+
+        mockMvc.perform(get("/activities")
+                        .param("minParticipants", "2")
+                        .param("maxParticipants", "4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(3)));
+    }
+
+    /**
+     * Fetch the same page as JSON and as CBOR.
+     */
+    @Test
+    public void testGetActivitiesAsCbor() throws Exception {
+        for (var i = 1; i <= 3; i++) {
+            activityRepository.save(Activity.builder()
+                    .name("Activity name " + i)
+                    .type("Activity type")
+                    .participants(i)
+                    .build());
+        }
+
+        var jsonMvcResult = mockMvc.perform(get("/activities"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        var cborMvcResult = mockMvc.perform(get("/activities")
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        var page = new CBORMapper().readValue(cborMvcResult.getResponse().getContentAsByteArray(), ActivityPage.class);
+
+        BDDAssertions.then(page.getItems())
+                .extracting(Activity::getName)
+                .containsExactly("Activity name 1", "Activity name 2", "Activity name 3");
+        BDDAssertions.then(cborMvcResult.getResponse().getContentAsByteArray().length)
+                .isLessThan(jsonMvcResult.getResponse().getContentAsByteArray().length);
+    }
+
+    /**
+     * Search activities created through the API, including a query with a typo and a prefix.
+     */
+    @Test
+    public void testSearchActivities() throws Exception {
+        for (var name : List.of("Learn to play the guitar", "Go to a guitar concert", "Bake bread")) {
+            mockMvc.perform(post("/activities")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(mapper.writeValueAsBytes(Activity.builder()
+                                    .name(name)
+                                    .type("Activity type")
+                                    .participants(1)
+                                    .build())))
+                    .andExpect(status().isOk());
+        }
+
+        mockMvc.perform(get("/activities/search")
+                        .param("q", "gitar"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        mockMvc.perform(get("/activities/search")
+                        .param("q", "learn guit"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name").value("Learn to play the guitar"));
+    }
+
+    /**
+     * Stats follow single creates and deletes immediately, from the columns the delete read under its lock.
+     */
+    @Test
+    public void testGetStats() throws Exception {
+        var createdActivities = new ArrayList<Activity>();
+        for (var type : List.of("social", "cooking")) {
+            var createMvcResult = mockMvc.perform(post("/activities")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(mapper.writeValueAsBytes(Activity.builder()
+                                    .name("Activity name")
+                                    .type(type)
+                                    .participants(type.length())
+                                    .build())))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            createdActivities.add(mapper.readValue(createMvcResult.getResponse().getContentAsString(), Activity.class));
+        }
+
+        mockMvc.perform(get("/activities/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.totalParticipants").value(13))
+                .andExpect(jsonPath("$.countByType.social").value(1))
+                .andExpect(jsonPath("$.countByType.cooking").value(1));
+
+        mockMvc.perform(delete("/activities/" + createdActivities.get(0).getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/activities/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1))
+                .andExpect(jsonPath("$.averageParticipants").value(7.0))
+                .andExpect(jsonPath("$.countByType.social").doesNotExist());
+    }
+
+    /**
+     * An update with the ETag of the version that was read succeeds once; reusing the old ETag fails the precondition.
+     */
+    @Test
+    public void testConditionalUpdateActivity() throws Exception {
+        var id = activityRepository.save(generateTestActivities().get(0)).getId();
+
+        var eTag = mockMvc.perform(get("/activities/" + id))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        var activityToUpdate = generateTestActivities().get(0);
+        activityToUpdate.setName("Updated name!");
+
+        mockMvc.perform(put("/activities/" + id)
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activityToUpdate)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$.name").value("Updated name!"));
+
+        mockMvc.perform(put("/activities/" + id)
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activityToUpdate)))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put("/activities/" + (id + 100))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activityToUpdate)))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(put("/activities/" + (id + 100))
+                        .header(HttpHeaders.IF_MATCH, "W/\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activityToUpdate)))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * Export all activities as newline delimited JSON, one activity per line.
+     */
+    @Test
+    public void testExportActivities() throws Exception {
+        var savedActivities = activityRepository.saveAll(generateTestActivities());
+
+        var exportMvcResult = mockMvc.perform(get("/activities/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var exportResponse = mockMvc.perform(asyncDispatch(exportMvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse();
+
+        var lines = exportResponse.getContentAsString().lines().toList();
+
+        BDDAssertions.then(lines)
+                .hasSize(2);
+        BDDAssertions.then(mapper.readValue(lines.get(0), Activity.class))
+                .isEqualTo(savedActivities.get(0));
+        BDDAssertions.then(mapper.readValue(lines.get(1), Activity.class))
+                .isEqualTo(savedActivities.get(1));
+    }
+
+    /**
+     * A merge patch changes only the attributes it names, so it keeps a concurrent patch of another attribute.
+     */
+    @Test
+    public void testPatchActivity() throws Exception {
+        var id = activityRepository.save(generateTestActivities().get(0)).getId();
+
+        mockMvc.perform(patch("/activities/" + id)
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"participants\": 7}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(jsonPath("$.participants").value(7));
+
+        mockMvc.perform(patch("/activities/" + id)
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"name\": \"Patched name\", \"type\": null}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Patched name"))
+                .andExpect(jsonPath("$.type").value(nullValue()))
+                .andExpect(jsonPath("$.participants").value(7));
+
+        mockMvc.perform(patch("/activities/" + id)
+                        .header(HttpHeaders.IF_MATCH, "\"1\"")
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"participants\": 2}"))
+                .andExpect(status().isPreconditionFailed());
+
+        BDDAssertions.then(activityRepository.findById(id))
+                .hasValueSatisfying(activity -> {
+                    BDDAssertions.then(activity.getName()).isEqualTo("Patched name");
+                    BDDAssertions.then(activity.getParticipants()).isEqualTo(7);
+                    BDDAssertions.then(activity.getVersion()).isEqualTo(2L);
+                });
+    }
+
+    /**
+     * Deleting a missing activity succeeds like the first delete, and only the first one leaves a tombstone.
+     */
+    @Test
+    public void testDeleteActivityIsIdempotent() throws Exception {
+        var id = activityRepository.save(generateTestActivities().get(0)).getId();
+
+        mockMvc.perform(delete("/activities/" + id))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/activities/" + id))
+                .andExpect(status().isOk());
+
+        BDDAssertions.then(activityRepository.existsById(id))
+                .isFalse();
+        mockMvc.perform(get("/activities/changes")
+                        .param("since", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deletions", hasSize(1)))
+                .andExpect(jsonPath("$.deletions[0]").value(id.intValue()));
+    }
+
+    /**
+     * Deletes every activity of one type and reports how many were deleted.
+     */
+    @Test
+    public void testDeleteActivitiesByType() throws Exception {
+        var activities = new ArrayList<>(generateTestActivities());
+        activities.add(Activity.builder()
+                .name("Activity name 3")
+                .type("Activity type 1")
+                .participants(1)
+                .build());
+        activityRepository.saveAll(activities);
+
+        mockMvc.perform(delete("/activities")
+                        .param("type", "Activity type 1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        BDDAssertions.then(activityRepository.findAll())
+                .extracting(Activity::getType)
+                .containsExactly("Activity type 2");
+        mockMvc.perform(get("/activities/changes")
+                        .param("since", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deletions", hasSize(2)));
+
+        mockMvc.perform(delete("/activities")
+                        .param("type", "Activity type 1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("0"));
+    }
+
+    /**
+     * Create, update and delete activities in bulk.
+     * Missing ids are reported per item instead of failing the whole request.
+     */
+    @Test
+    public void testBatchOperations() throws Exception {
+        var createMvcResult = mockMvc.perform(post("/activities/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(generateTestActivities())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("CREATED"))
+                .andReturn();
+
+        var createdResults = mapper.readValue(createMvcResult.getResponse().getContentAsString(),
+                ActivityBatchResult[].class);
+
+        var firstId = createdResults[0].getId();
+        var secondId = createdResults[1].getId();
+
+        var updatedActivity = generateTestActivities().get(0);
+        updatedActivity.setId(firstId);
+        updatedActivity.setName("Updated name!");
+
+        var missingActivity = generateTestActivities().get(1);
+        missingActivity.setId(secondId + 100);
+
+        mockMvc.perform(put("/activities/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(List.of(updatedActivity, missingActivity))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("UPDATED"))
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+
+        BDDAssertions.then(activityRepository.findById(firstId))
+                .contains(updatedActivity);
+
+        mockMvc.perform(delete("/activities/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(List.of(firstId, secondId + 100))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("DELETED"))
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+
+        BDDAssertions.then(activityRepository.findAll())
+                .extracting(Activity::getId)
+                .containsExactly(secondId);
+        mockMvc.perform(get("/activities/changes")
+                        .param("since", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deletions", hasSize(1)))
+                .andExpect(jsonPath("$.deletions[0]").value(firstId.intValue()));
+        mockMvc.perform(get("/activities/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1));
+    }
+
+    /**
+     * Reads are served from the cache until the activity is written through the service.
+     */
+    @Test
+    public void testGetActivityIsCachedAndInvalidatedOnUpdate() throws Exception {
+        var savedActivity = activityRepository.save(generateTestActivities().get(0));
+        var id = savedActivity.getId();
+
+        mockMvc.perform(get("/activities/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Activity name 1"));
+
+        // Bypass the service, so the cached activity is not invalidated
+        savedActivity.setName("Changed behind the cache");
+        activityRepository.save(savedActivity);
+
+        mockMvc.perform(get("/activities/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Activity name 1"));
+
+        var activityToUpdate = generateTestActivities().get(0);
+        activityToUpdate.setName("Updated name!");
+
+        mockMvc.perform(put("/activities/" + id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activityToUpdate)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/activities/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Updated name!"));
+
+        mockMvc.perform(get("/activities/" + (id + 100)))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * Conditional reads answer 304 until an activity is written.
+     */
+    @Test
+    public void testConditionalGetActivities() throws Exception {
+        var eTag = mockMvc.perform(get("/activities"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        BDDAssertions.then(eTag)
+                .isNotBlank();
+
+        mockMvc.perform(get("/activities")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(post("/activities")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(generateTestActivities().get(0))))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/activities")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$.items", hasSize(1)));
+    }
+
+    /**
+     * Only activities written after the given version are returned, including deletions.
+     */
+    @Test
+    public void testGetChangesSinceVersion() throws Exception {
+        var createMvcResult = mockMvc.perform(post("/activities/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(generateTestActivities())))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        var createdResults = mapper.readValue(createMvcResult.getResponse().getContentAsString(),
+                ActivityBatchResult[].class);
+
+        var initialChanges = getChanges(0);
+
+        BDDAssertions.then(initialChanges.getUpserts())
+                .hasSize(2);
+
+        var activityToUpdate = generateTestActivities().get(0);
+        activityToUpdate.setName("Updated name!");
+
+        mockMvc.perform(put("/activities/" + createdResults[0].getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activityToUpdate)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(delete("/activities/" + createdResults[1].getId()))
+                .andExpect(status().isOk());
+
+        var changes = getChanges(initialChanges.getVersion());
+
+        BDDAssertions.then(changes.getUpserts())
+                .extracting(Activity::getName)
+                .containsExactly("Updated name!");
+        BDDAssertions.then(changes.getDeletions())
+                .containsExactly(createdResults[1].getId());
+        BDDAssertions.then(getChanges(changes.getVersion()))
+                .isEqualTo(new ActivityChanges(List.of(), List.of(), changes.getVersion(), null));
+    }
+
+    /**
+     * Subscribers of the event stream are told about activities created by other clients.
+     */
+    @Test
+    public void testStreamActivityEvents() throws Exception {
+        var streamMvcResult = mockMvc.perform(get("/activities/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(post("/activities")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(generateTestActivities().get(0))))
+                .andExpect(status().isOk());
+
+        var streamResponse = streamMvcResult.getResponse();
+        var deadline = System.currentTimeMillis() + 5000;
+        while (!streamResponse.getContentAsString().contains("event:created")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        BDDAssertions.then(streamResponse.getContentAsString())
+                .contains("event:created")
+                .contains("Activity name 1");
+    }
+
+    /**
+     * A client that reconnects to the event stream is told to catch up through the change feed.
+     */
+    @Test
+    public void testStreamActivityEventsAfterReconnect() throws Exception {
+        var streamMvcResult = mockMvc.perform(get("/activities/stream")
+                        .header(ActivityController.LAST_EVENT_ID, "5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var streamResponse = streamMvcResult.getResponse();
+        var deadline = System.currentTimeMillis() + 5000;
+        while (!streamResponse.getContentAsString().contains("event:resync")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        BDDAssertions.then(streamResponse.getContentAsString())
+                .contains("event:resync");
+    }
+
+    private ActivityChanges getChanges(long since) throws Exception {
+        var mvcResult = mockMvc.perform(get("/activities/changes")
+                        .param("since", Long.toString(since)))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        return mapper.readValue(mvcResult.getResponse().getContentAsString(), ActivityChanges.class);
+    }
+
     private void assertGetAllContainsExactlyExpectedActivity(Activity expectedActivity) throws Exception {
         var getAllMvcResult = mockMvc.perform(get("/activities")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.items", hasSize(1)))
                 .andReturn();
 
-        var actualActivities = mapper.readValue(
-                getAllMvcResult.getResponse().getContentAsString(), new TypeReference<List<Activity>>() {
-                });
+        var actualPage = mapper.readValue(getAllMvcResult.getResponse().getContentAsString(), ActivityPage.class);
 
-        BDDAssertions.then(actualActivities)
+        BDDAssertions.then(actualPage.getItems())
                 .containsExactly(expectedActivity);
     }
 
@@ -174,6 +699,6 @@ public class ActivityControllerIntegrationTest {
         mockMvc.perform(get("/activities")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(0)));
+                .andExpect(jsonPath("$.items", hasSize(0)));
     }
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package com.ounal.activity_manager;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.assertj.core.api.BDDAssertions;
 import org.junit.jupiter.api.AfterEach;
@@ -10,20 +11,29 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.ounal.activity_manager.ActivityTestHelper.generateTestActivities;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -37,12 +47,21 @@ public class ActivityControllerTest {
     @MockitoBean
     private ActivityService activityService;
 
+    @MockitoBean
+    private ActivityIngestQueue activityIngestQueue;
+
+    @MockitoBean
+    private ActivityEventBroadcaster activityEventBroadcaster;
+
     private ObjectMapper mapper;
 
     @BeforeEach
     void setUp() {
         mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
+
+        given(activityService.getTableVersionTag())
+                .willReturn("test-1");
     }
 
     @AfterEach
@@ -115,38 +134,450 @@ public class ActivityControllerTest {
     }
 
     @Test
-    public void whenGetAllActivities_thenCallService() throws Exception {
+    public void givenActivityExists_whenGetActivity_thenReturnActivity() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.getActivity(1L))
+                .willReturn(expectedActivity);
+
+        var mvcResult = mockMvc.perform(get("/activities/1"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        var actualActivity = mapper.readValue(mvcResult.getResponse().getContentAsString(), Activity.class);
+
+        BDDAssertions.then(actualActivity)
+                .isEqualTo(expectedActivity);
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenGetActivity_thenReturnNotFound() throws Exception {
+        given(activityService.getActivity(1L))
+                .willThrow(new ActivityNotFoundException(1L));
+
+        mockMvc.perform(get("/activities/1"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void whenGetActivities_thenCallServiceWithDefaults() throws Exception {
         mockMvc.perform(get("/activities"));
 
         then(activityService)
                 .should()
-                .getAllActivities();
+                .getActivities(null, ActivityService.DEFAULT_PAGE_SIZE, new ActivityFilter(), "test-1");
     }
 
     @Test
-    public void givenActivities_whenGetAllActivities_thenReturnAllActivities() throws Exception {
+    public void whenGetActivitiesWithParameters_thenCallServiceWithParameters() throws Exception {
+        mockMvc.perform(get("/activities")
+                .param("after", "7")
+                .param("limit", "20")
+                .param("type", "Activity type 1")
+                .param("minParticipants", "2")
+                .param("maxParticipants", "4"));
+
+        var expectedFilter = ActivityFilter.builder()
+                .type("Activity type 1")
+                .minParticipants(2)
+                .maxParticipants(4)
+                .build();
+
+        then(activityService)
+                .should()
+                .getActivities(7L, 20, expectedFilter, "test-1");
+    }
+
+    @Test
+    public void givenActivities_whenGetActivities_thenReturnPage() throws Exception {
         var expectedActivities = generateTestActivities();
 
-        given(activityService.getAllActivities())
-                .willReturn(expectedActivities);
+        given(activityService.getActivities(null, ActivityService.DEFAULT_PAGE_SIZE, new ActivityFilter(), "test-1"))
+                .willReturn(new ActivityPage(expectedActivities, 2L));
 
         var mvcResult = mockMvc.perform(get("/activities")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.nextCursor").value(2))
+                .andReturn();
+
+        var actualPage = mapper.readValue(mvcResult.getResponse().getContentAsString(), ActivityPage.class);
+
+        assertThat(actualPage.getItems(), containsInAnyOrder(expectedActivities.toArray()));
+    }
+
+    @Test
+    public void givenAcceptCbor_whenGetActivities_thenReturnCborPageThatVariesByAccept() throws Exception {
+        var expectedActivities = generateTestActivities();
+
+        given(activityService.getActivities(null, ActivityService.DEFAULT_PAGE_SIZE, new ActivityFilter(), "test-1"))
+                .willReturn(new ActivityPage(expectedActivities, 2L));
+
+        var mvcResult = mockMvc.perform(get("/activities")
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andReturn();
+
+        var actualPage = new CBORMapper().readValue(mvcResult.getResponse().getContentAsByteArray(), ActivityPage.class);
+
+        BDDAssertions.then(actualPage.getItems())
+                .isEqualTo(expectedActivities);
+        BDDAssertions.then(actualPage.getNextCursor())
+                .isEqualTo(2L);
+    }
+
+    @Test
+    public void givenSmileBody_whenCreateActivity_thenReadSmileAndAnswerInSmile() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+        var smileMapper = new SmileMapper();
+
+        given(activityService.createActivity(expectedActivity))
+                .willReturn(expectedActivity);
+
+        var mvcResult = mockMvc.perform(post("/activities")
+                        .contentType("application/x-jackson-smile")
+                        .accept("application/x-jackson-smile")
+                        .content(smileMapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        BDDAssertions.then(smileMapper.readValue(mvcResult.getResponse().getContentAsByteArray(), Activity.class))
+                .isEqualTo(expectedActivity);
+    }
+
+    @Test
+    public void givenActivities_whenGetActivitiesByNamePrefix_thenReturnActivities() throws Exception {
+        var expectedActivities = generateTestActivities();
+
+        given(activityService.getActivitiesByNamePrefix("Activity", 10))
+                .willReturn(expectedActivities);
+
+        mockMvc.perform(get("/activities/by-name")
+                        .param("prefix", "Activity")
+                        .param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    public void givenActivities_whenSearchActivities_thenReturnActivities() throws Exception {
+        var expectedActivities = generateTestActivities();
+
+        given(activityService.searchActivities("activty", ActivityService.DEFAULT_PAGE_SIZE))
+                .willReturn(expectedActivities);
+
+        mockMvc.perform(get("/activities/search")
+                        .param("q", "activty"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    public void whenGetStats_thenReturnStats() throws Exception {
+        given(activityService.getStats())
+                .willReturn(ActivityStats.builder()
+                        .count(2)
+                        .totalParticipants(3)
+                        .averageParticipants(1.5)
+                        .countByType(Map.of("Exercise", 1L, "Study", 1L))
+                        .countByParticipants(Map.of(1, 1L, 2, 1L))
+                        .build());
+
+        mockMvc.perform(get("/activities/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.averageParticipants").value(1.5))
+                .andExpect(jsonPath("$.countByType.Study").value(1));
+    }
+
+    @Test
+    public void whenGetActivities_thenReturnETag() throws Exception {
+        mockMvc.perform(get("/activities"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"test-1\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+    }
+
+    @Test
+    public void givenMatchingETag_whenGetActivities_thenReturnNotModifiedWithoutCallingService() throws Exception {
+        mockMvc.perform(get("/activities")
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"test-1\""))
+                .andExpect(status().isNotModified());
+
+        then(activityService)
+                .should(never())
+                .getActivities(any(), anyInt(), any(), any());
+    }
+
+    @Test
+    public void givenStaleETag_whenGetActivity_thenReturnActivityTaggedWithVersion() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+        expectedActivity.setVersion(3L);
+
+        given(activityService.getActivity(1L))
+                .willReturn(expectedActivity);
+
+        mockMvc.perform(get("/activities/1")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(jsonPath("$.name").value(expectedActivity.getName()));
+    }
+
+    @Test
+    public void givenMatchingETag_whenGetActivity_thenReturnNotModifiedFromCachedActivity() throws Exception {
+        var cachedActivity = generateTestActivities().get(0);
+        cachedActivity.setVersion(3L);
+
+        given(activityService.getActivity(1L))
+                .willReturn(cachedActivity);
+
+        mockMvc.perform(get("/activities/1")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        then(activityService)
+                .should(never())
+                .getActivityVersion(any());
+    }
+
+    @Test
+    public void givenIfMatch_whenUpdateActivity_thenPassVersionAndReturnNewETag() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+        var updatedActivity = generateTestActivities().get(0);
+        updatedActivity.setVersion(4L);
+
+        given(activityService.updateActivity(1L, expectedActivity, 3L))
+                .willReturn(updatedActivity);
+
+        mockMvc.perform(put("/activities/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    @Test
+    public void givenStaleIfMatch_whenUpdateActivity_thenReturnPreconditionFailed() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.updateActivity(1L, expectedActivity, 2L))
+                .willThrow(new ActivityPreconditionFailedException(1L));
+
+        mockMvc.perform(put("/activities/1")
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void givenWeakIfMatch_whenUpdateActivity_thenPassVersionThatNeverMatches() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.updateActivity(1L, expectedActivity, ActivityController.NO_VERSION))
+                .willThrow(new ActivityPreconditionFailedException(1L));
+
+        mockMvc.perform(put("/activities/1")
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void givenIfMatchList_whenUpdateActivity_thenPassListedVersionThatIsCurrent() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+        var updatedActivity = generateTestActivities().get(0);
+        updatedActivity.setVersion(4L);
+
+        given(activityService.getActivityVersion(1L))
+                .willReturn(3L);
+        given(activityService.updateActivity(1L, expectedActivity, 3L))
+                .willReturn(updatedActivity);
+
+        mockMvc.perform(put("/activities/1")
+                        .header(HttpHeaders.IF_MATCH, "\"2\", W/\"5\", \"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    @Test
+    public void givenIfMatchAndActivityDoesNotExist_whenUpdateActivity_thenReturnNotFound() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.getActivityVersion(1L))
+                .willThrow(new ActivityNotFoundException(1L));
+
+        mockMvc.perform(put("/activities/1")
+                        .header(HttpHeaders.IF_MATCH, "\"2\", \"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenUpdateActivity_thenReturnNotFound() throws Exception {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityService.updateActivity(1L, expectedActivity, null))
+                .willThrow(new ActivityNotFoundException(1L));
+
+        mockMvc.perform(put("/activities/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(expectedActivity)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void givenIngestEnabledAndRespondAsync_whenCreateActivity_thenQueueAndReturnAccepted() throws Exception {
+        var activity = generateTestActivities().get(0);
+
+        given(activityIngestQueue.isEnabled())
+                .willReturn(true);
+        given(activityIngestQueue.submit(activity))
+                .willReturn(ActivityIngestStatus.builder()
+                        .trackingId("tracking-1")
+                        .status(ActivityIngestStatus.Status.QUEUED)
+                        .build());
+
+        mockMvc.perform(post("/activities")
+                        .header(ActivityController.PREFER, "wait=5, respond-async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activity)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/activities/ingest/tracking-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"));
+
+        then(activityService)
+                .should(never())
+                .createActivity(any());
+    }
+
+    @Test
+    public void givenIngestEnabledWithoutRespondAsync_whenCreateActivity_thenCreateSynchronously() throws Exception {
+        var activity = generateTestActivities().get(0);
+
+        given(activityIngestQueue.isEnabled())
+                .willReturn(true);
+        given(activityService.createActivity(activity))
+                .willReturn(activity);
+
+        mockMvc.perform(post("/activities")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activity)))
+                .andExpect(status().isOk());
+
+        then(activityIngestQueue)
+                .should(never())
+                .submit(any());
+    }
+
+    @Test
+    public void givenIngestQueueFull_whenCreateActivity_thenReturnTooManyRequests() throws Exception {
+        given(activityIngestQueue.isEnabled())
+                .willReturn(true);
+        given(activityIngestQueue.submit(any()))
+                .willThrow(new ActivityIngestQueueFullException());
+
+        mockMvc.perform(post("/activities")
+                        .header(ActivityController.PREFER, ActivityController.RESPOND_ASYNC)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(generateTestActivities().get(0))))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    public void givenUnknownTrackingId_whenGetIngestStatus_thenReturnNotFound() throws Exception {
+        mockMvc.perform(get("/activities/ingest/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void givenMergePatch_whenPatchActivity_thenPassOnlyPresentMembers() throws Exception {
+        var changes = new HashMap<String, Object>();
+        changes.put("participants", 4);
+        changes.put("type", null);
+        var patchedActivity = generateTestActivities().get(0);
+        patchedActivity.setVersion(4L);
+
+        given(activityService.patchActivity(1L, new ActivityPatch(changes), 3L))
+                .willReturn(patchedActivity);
+
+        mockMvc.perform(patch("/activities/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"participants\": 4, \"type\": null}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.name").value("Activity name 1"));
+    }
+
+    @Test
+    public void givenReadOnlyMember_whenPatchActivity_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(patch("/activities/1")
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"version\": 7}"))
+                .andExpect(status().isBadRequest());
+
+        then(activityService)
+                .should(never())
+                .patchActivity(any(), any(), any());
+    }
+
+    @Test
+    public void givenMemberOfWrongType_whenPatchActivity_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(patch("/activities/1")
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"participants\": \"four\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenPatchActivity_thenReturnNotFound() throws Exception {
+        given(activityService.patchActivity(any(), any(), any()))
+                .willThrow(new ActivityNotFoundException(1L));
+
+        mockMvc.perform(patch("/activities/1")
+                        .contentType(ActivityPatch.MEDIA_TYPE)
+                        .content("{\"name\": \"New name\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void whenGetChanges_thenReturnChanges() throws Exception {
+        var expectedChanges = new ActivityChanges(generateTestActivities(), List.of(3L), 12L, 8L);
+
+        given(activityService.getChanges(4L, 2L, 3))
+                .willReturn(expectedChanges);
+
+        var mvcResult = mockMvc.perform(get("/activities/changes")
+                        .param("since", "4")
+                        .param("after", "2")
+                        .param("limit", "3"))
+                .andExpect(status().isOk())
                 .andReturn();
 
-        var actualActivities = mapper.readValue(
-                mvcResult.getResponse().getContentAsString(), new TypeReference<List<Activity>>() {
-                });
+        var actualChanges = mapper.readValue(mvcResult.getResponse().getContentAsString(), ActivityChanges.class);
 
-        assertThat(actualActivities, containsInAnyOrder(expectedActivities.toArray()));
+        BDDAssertions.then(actualChanges)
+                .isEqualTo(expectedChanges);
     }
 
     @Test
     public void whenUpdateActivity_thenCallService() throws Exception {
         var expectedActivity = generateTestActivities().get(0);
 
+        given(activityService.updateActivity(1L, expectedActivity, null))
+                .willReturn(expectedActivity);
+
         var activityBytes = mapper.writeValueAsBytes(expectedActivity);
 
         mockMvc.perform(put("/activities/1")
@@ -155,14 +586,14 @@ public class ActivityControllerTest {
 
         then(activityService)
                 .should()
-                .updateActivity(1L, expectedActivity);
+                .updateActivity(1L, expectedActivity, null);
     }
 
     @Test
     public void whenUpdateActivity_thenReturnActivity() throws Exception {
         var expectedActivity = generateTestActivities().get(0);
 
-        given(activityService.updateActivity(1L, expectedActivity))
+        given(activityService.updateActivity(1L, expectedActivity, null))
                 .willReturn(expectedActivity);
 
         var activityBytes = mapper.writeValueAsBytes(expectedActivity);
@@ -187,4 +618,67 @@ public class ActivityControllerTest {
                 .should()
                 .deleteActivity(1L);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void givenActivityDoesNotExist_whenDeleteActivity_thenReturnOk() throws Exception {
+        given(activityService.deleteActivity(1L))
+                .willReturn(false);
+
+        mockMvc.perform(delete("/activities/1"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void whenDeleteActivitiesByType_thenReturnDeletedCount() throws Exception {
+        given(activityService.deleteActivitiesByType("social"))
+                .willReturn(3);
+
+        mockMvc.perform(delete("/activities")
+                        .param("type", "social"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3"));
+    }
+
+    @Test
+    public void whenCreateActivities_thenReturnBatchResults() throws Exception {
+        var activities = generateTestActivities();
+
+        var expectedResults = List.of(
+                ActivityBatchResult.builder().id(1L).status(ActivityBatchResult.Status.CREATED).build(),
+                ActivityBatchResult.builder().id(2L).status(ActivityBatchResult.Status.CREATED).build());
+
+        given(activityService.createActivities(activities))
+                .willReturn(expectedResults);
+
+        mockMvc.perform(post("/activities/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsBytes(activities)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status").value("CREATED"));
+    }
+
+    @Test
+    public void whenUpdateActivities_thenCallService() throws Exception {
+        var activities = generateTestActivities();
+
+        mockMvc.perform(put("/activities/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(activities)));
+
+        then(activityService)
+                .should()
+                .updateActivities(activities);
+    }
+
+    @Test
+    public void whenDeleteActivities_thenCallService() throws Exception {
+        mockMvc.perform(delete("/activities/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2]"));
+
+        then(activityService)
+                .should()
+                .deleteActivities(List.of(1L, 2L));
+    }
+}
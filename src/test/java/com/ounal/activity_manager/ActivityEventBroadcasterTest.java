@@ -0,0 +1,119 @@
+package com.ounal.activity_manager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class ActivityEventBroadcasterTest {
+
+    private final List<Runnable> scheduledDrains = new ArrayList<>();
+
+    private SimpleMeterRegistry meterRegistry;
+    private ActivityEventBroadcaster activityEventBroadcaster;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new ActivityEventsProperties();
+        properties.setBufferSize(2);
+
+        meterRegistry = new SimpleMeterRegistry();
+
+        // Collect drains instead of running them, to simulate a subscriber that cannot keep up
+        activityEventBroadcaster = new ActivityEventBroadcaster(properties, scheduledDrains::add, meterRegistry);
+    }
+
+    @Test
+    public void whenSubscribe_thenCountSubscriber() {
+        activityEventBroadcaster.subscribe(null);
+        activityEventBroadcaster.subscribe(null);
+
+        BDDAssertions.then(meterRegistry.get("activity.events.subscribers").gauge().value())
+                .isEqualTo(2.0);
+    }
+
+    @Test
+    public void givenPendingDrain_whenPublish_thenScheduleOnlyOneDrain() {
+        activityEventBroadcaster.subscribe(null);
+
+        activityEventBroadcaster.onActivityEvent(ActivityEvent.deleted(1L, 1L));
+        activityEventBroadcaster.onActivityEvent(ActivityEvent.deleted(2L, 2L));
+
+        BDDAssertions.then(scheduledDrains)
+                .hasSize(1);
+    }
+
+    @Test
+    public void givenLastEventId_whenSubscribe_thenScheduleResyncBeforeAnyEvent() {
+        activityEventBroadcaster.subscribe("5");
+
+        BDDAssertions.then(scheduledDrains)
+                .hasSize(1);
+    }
+
+    @Test
+    public void givenBufferFull_whenPublish_thenRequireResync() {
+        activityEventBroadcaster.subscribe(null);
+
+        activityEventBroadcaster.onActivityEvent(ActivityEvent.deleted(1L, 1L));
+        activityEventBroadcaster.onActivityEvent(ActivityEvent.deleted(2L, 2L));
+        activityEventBroadcaster.onActivityEvent(ActivityEvent.deleted(3L, 3L));
+
+        BDDAssertions.then(meterRegistry.get("activity.events.resyncs").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void givenSendStuckPastSendTimeout_whenDropSlowSubscribers_thenReplaceSenderAndCompleteStreamOnceSendReturns()
+            throws Exception {
+        var properties = new ActivityEventsProperties();
+        properties.setSendTimeout(Duration.ZERO);
+
+        var sendExecutor = new ThreadPoolTaskExecutor();
+        sendExecutor.setCorePoolSize(1);
+        sendExecutor.setMaxPoolSize(1);
+        sendExecutor.initialize();
+        try {
+            var broadcaster = new ActivityEventBroadcaster(properties, sendExecutor, meterRegistry);
+            var emitter = broadcaster.subscribe(null);
+
+            // Sends lock the emitter, so holding its lock keeps the send stuck like a client that stopped reading
+            synchronized (emitter) {
+                broadcaster.onActivityEvent(ActivityEvent.deleted(1L, 1L));
+                awaitUntil(() -> {
+                    broadcaster.dropSlowSubscribers();
+                    return meterRegistry.get("activity.events.drops").counter().count() == 1.0;
+                });
+
+                BDDAssertions.then(meterRegistry.get("activity.events.subscribers").gauge().value())
+                        .isZero();
+                BDDAssertions.then(sendExecutor.getCorePoolSize())
+                        .isEqualTo(2);
+            }
+
+            awaitUntil(() -> sendExecutor.getCorePoolSize() == 1 && sendExecutor.getActiveCount() == 0);
+            BDDAssertions.then(catchThrowable(() -> emitter.send("after drop")))
+                    .isInstanceOf(IllegalStateException.class);
+        } finally {
+            sendExecutor.shutdown();
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 10 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.timeout;
+
+@ExtendWith(MockitoExtension.class)
+public class ActivityIngestQueueTest {
+
+    @Mock
+    private ActivityService activityService;
+    @Mock
+    private ActivityIngestCheckpointRepository activityIngestCheckpointRepository;
+
+    @TempDir
+    private Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ActivityIngestProperties properties;
+    private ActivityIngestQueue activityIngestQueue;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ActivityIngestProperties();
+        properties.setEnabled(true);
+        properties.setJournalPath(directory.resolve("ingest-journal.ndjson"));
+
+        // Hand back the activities with ids assigned, as copies so that verifying the arguments still works
+        lenient().when(activityService.createIngestedActivities(anyList(), anyLong()))
+                .thenAnswer(invocation -> invocation.<List<Activity>>getArgument(0).stream()
+                        .map(activity -> Activity.builder()
+                                .id(100L + activity.getParticipants())
+                                .name(activity.getName())
+                                .type(activity.getType())
+                                .participants(activity.getParticipants())
+                                .build())
+                        .toList());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (activityIngestQueue != null) {
+            activityIngestQueue.stop();
+        }
+    }
+
+    @Test
+    public void givenAcceptedActivity_whenWriterCommits_thenReportCreatedAndEmptyJournal() throws Exception {
+        startQueue();
+
+        var status = activityIngestQueue.submit(activity(3));
+
+        BDDAssertions.then(status.getStatus())
+                .isEqualTo(ActivityIngestStatus.Status.QUEUED);
+        then(activityService)
+                .should(timeout(1_000))
+                .createIngestedActivities(List.of(activity(3)), 1L);
+
+        activityIngestQueue.stop();
+        BDDAssertions.then(activityIngestQueue.getStatus(status.getTrackingId()))
+                .hasValueSatisfying(created -> {
+                    BDDAssertions.then(created.getStatus()).isEqualTo(ActivityIngestStatus.Status.CREATED);
+                    BDDAssertions.then(created.getActivityId()).isEqualTo(103L);
+                });
+        BDDAssertions.then(Files.size(properties.getJournalPath()))
+                .isZero();
+    }
+
+    @Test
+    public void givenUncommittedJournalEntries_whenStart_thenWriteThemBeforeAcceptingNewOnes() throws Exception {
+        Files.writeString(properties.getJournalPath(),
+                objectMapper.writeValueAsString(new ActivityIngestEntry(1L, "committed", activity(1))) + "\n"
+                        + objectMapper.writeValueAsString(new ActivityIngestEntry(2L, "lost", activity(2))) + "\n"
+                        // Torn by a crash, never acknowledged
+                        + "{\"sequence\":3,\"tracking");
+        given(activityIngestCheckpointRepository.findCommittedSequence())
+                .willReturn(1L);
+
+        startQueue();
+
+        then(activityService)
+                .should()
+                .createIngestedActivities(List.of(activity(2)), 2L);
+        BDDAssertions.then(activityIngestQueue.getStatus("lost"))
+                .hasValueSatisfying(created -> BDDAssertions.then(created.getActivityId()).isEqualTo(102L));
+
+        var status = activityIngestQueue.submit(activity(4));
+        then(activityService)
+                .should(timeout(1_000))
+                .createIngestedActivities(List.of(activity(4)), 3L);
+        BDDAssertions.then(status.getTrackingId())
+                .isNotEqualTo("lost");
+    }
+
+    @Test
+    public void givenQueueFull_whenSubmit_thenReject() throws Exception {
+        properties.setQueueCapacity(1);
+        var writing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        willAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return invocation.getArgument(0);
+        }).given(activityService).createIngestedActivities(anyList(), anyLong());
+
+        startQueue();
+        try {
+            activityIngestQueue.submit(activity(1));
+            BDDAssertions.then(writing.await(1, TimeUnit.SECONDS))
+                    .isTrue();
+            activityIngestQueue.submit(activity(2));
+
+            var thrown = catchThrowable(() -> activityIngestQueue.submit(activity(3)));
+
+            BDDAssertions.then(thrown)
+                    .isInstanceOf(ActivityIngestQueueFullException.class);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void givenActivityRejectedByDatabase_whenWriterCommits_thenReportFailedAndMoveCheckpointPastIt()
+            throws Exception {
+        given(activityService.createIngestedActivities(List.of(activity(1)), 1L))
+                .willThrow(new DataIntegrityViolationException("value too long"));
+
+        startQueue();
+        var status = activityIngestQueue.submit(activity(1));
+
+        then(activityService)
+                .should(timeout(1_000))
+                .createIngestedActivities(eq(List.of()), eq(1L));
+        activityIngestQueue.stop();
+        BDDAssertions.then(activityIngestQueue.getStatus(status.getTrackingId()))
+                .hasValueSatisfying(failed -> BDDAssertions.then(failed.getStatus())
+                        .isEqualTo(ActivityIngestStatus.Status.FAILED));
+    }
+
+    @Test
+    public void givenIngestDisabled_whenStart_thenDoNotOpenJournal() throws Exception {
+        properties.setEnabled(false);
+
+        startQueue();
+
+        BDDAssertions.then(Files.exists(properties.getJournalPath()))
+                .isFalse();
+        BDDAssertions.then(catchThrowable(() -> activityIngestQueue.submit(activity(1))))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private void startQueue() throws Exception {
+        activityIngestQueue = new ActivityIngestQueue(activityService, activityIngestCheckpointRepository,
+                properties, objectMapper, new SimpleMeterRegistry());
+        activityIngestQueue.start();
+    }
+
+    private static Activity activity(int participants) {
+        return Activity.builder()
+                .name("Activity name " + participants)
+                .type("Activity type")
+                .participants(participants)
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ounal.activity_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+
+import static com.ounal.activity_manager.ActivityService.BORED_API_GET_RANDOM_ACTIVITY_URL;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "activity-manager.random-pool.enabled=false")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ActivityMetricsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private MockRestServiceServer mockServer;
+
+    @BeforeEach
+    void setUp() {
+        mockServer = MockRestServiceServer.createServer(restTemplate);
+    }
+
+    /**
+     * A random activity request is timed at every layer it passes through:
+     * the endpoint, the service method, the upstream call and the repository save.
+     */
+    @Test
+    public void testRandomActivityIsTimedPerLayer() throws Exception {
+        var activityDto = ActivityDto.builder()
+                .name("Activity name")
+                .type("Activity type")
+                .participants(2)
+                .build();
+
+        mockServer.expect(ExpectedCount.once(), requestTo(new URI(BORED_API_GET_RANDOM_ACTIVITY_URL)))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withStatus(HttpStatus.OK)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(new ObjectMapper().writeValueAsString(activityDto)));
+
+        mockMvc.perform(post("/activities/random"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("http_server_requests_seconds_bucket"),
+                        containsString("uri=\"/activities/random\""),
+                        containsString("activity_service_seconds_bucket"),
+                        containsString("method=\"createRandomActivity\""),
+                        containsString("http_client_requests_seconds_bucket"),
+                        containsString("status=\"200\""),
+                        containsString("spring_data_repository_invocations_seconds_bucket"),
+                        containsString("repository=\"ActivityRepository\""))));
+    }
+}
@@ -0,0 +1,278 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.EntityManager;
+import org.assertj.core.api.BDDAssertions;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+
+/**
+ * Runs against the schema created by the Flyway migrations, and checks with H2's EXPLAIN that
+ * the list queries, as Hibernate renders them, are served by an index rather than a table scan.
+ */
+@DataJpaTest
+public class ActivityRepositoryTest {
+
+    private static final int SEEDED_ACTIVITIES = 1_000;
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private ActivityTombstoneRepository activityTombstoneRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private StatementRecorder statementRecorder;
+
+    @BeforeEach
+    void setUp() {
+        var activities = new ArrayList<Activity>(SEEDED_ACTIVITIES);
+        for (var i = 0; i < SEEDED_ACTIVITIES; i++) {
+            activities.add(Activity.builder()
+                    .name("Activity name " + i)
+                    .type("Activity type " + i % 10)
+                    .participants(i % 8 + 1)
+                    .changeVersion((long) i)
+                    .build());
+        }
+        activityRepository.saveAll(activities);
+        entityManager.flush();
+    }
+
+    @Test
+    public void givenTypeFilter_whenFindPageByType_thenReturnMatchingActivitiesInIdOrder() {
+        var activities = activityRepository.findPageByType(0L, "Activity type 3", 2, 4, Limit.of(5));
+
+        BDDAssertions.then(activities)
+                .hasSize(5)
+                .allSatisfy(activity -> {
+                    BDDAssertions.then(activity.getType()).isEqualTo("Activity type 3");
+                    BDDAssertions.then(activity.getParticipants()).isBetween(2, 4);
+                })
+                .extracting(Activity::getId)
+                .isSorted();
+    }
+
+    @Test
+    public void givenNamePrefix_whenFindByNameStartingWith_thenReturnMatchingActivitiesInNameOrder() {
+        var activities = activityRepository.findByNameStartingWithOrderByNameAscIdAsc("Activity name 99", Limit.of(20));
+
+        BDDAssertions.then(activities)
+                .extracting(Activity::getName)
+                .containsExactly("Activity name 99", "Activity name 990", "Activity name 991", "Activity name 992",
+                        "Activity name 993", "Activity name 994", "Activity name 995", "Activity name 996",
+                        "Activity name 997", "Activity name 998", "Activity name 999");
+    }
+
+    @Test
+    public void givenMergePatch_whenPatchById_thenChangeOnlyPatchedColumns() {
+        var activity = activityRepository.findPage(0L, null, null, Limit.of(1)).get(0);
+        var changes = new HashMap<String, Object>();
+        changes.put("participants", 42);
+        changes.put("type", null);
+
+        var updatedRows = activityRepository.patchById(activity.getId(), new ActivityPatch(changes), 5_000L,
+                activity.getVersion());
+        entityManager.clear();
+
+        BDDAssertions.then(updatedRows)
+                .isEqualTo(1);
+        var patchedActivity = activityRepository.findById(activity.getId()).orElseThrow();
+        BDDAssertions.then(patchedActivity.getName())
+                .isEqualTo(activity.getName());
+        BDDAssertions.then(patchedActivity.getType())
+                .isNull();
+        BDDAssertions.then(patchedActivity.getParticipants())
+                .isEqualTo(42);
+        BDDAssertions.then(patchedActivity.getChangeVersion())
+                .isEqualTo(5_000L);
+        BDDAssertions.then(patchedActivity.getVersion())
+                .isEqualTo(activity.getVersion() + 1);
+    }
+
+    @Test
+    public void givenStaleVersion_whenPatchById_thenUpdateNothing() {
+        var activity = activityRepository.findPage(0L, null, null, Limit.of(1)).get(0);
+
+        var updatedRows = activityRepository.patchById(activity.getId(),
+                new ActivityPatch(Map.of("name", "Patched name")), 5_000L, activity.getVersion() + 1);
+
+        BDDAssertions.then(updatedRows)
+                .isZero();
+    }
+
+    @Test
+    public void givenActivityExists_whenRemoveById_thenDeleteItOnce() {
+        var id = activityRepository.findPage(0L, null, null, Limit.of(1)).get(0).getId();
+
+        BDDAssertions.then(activityRepository.removeById(id))
+                .isEqualTo(1);
+        BDDAssertions.then(activityRepository.removeById(id))
+                .isZero();
+        BDDAssertions.then(activityRepository.existsById(id))
+                .isFalse();
+    }
+
+    @Test
+    public void givenActivities_whenLockingReadsForStats_thenReturnStatsColumns() {
+        var activity = activityRepository.findPage(0L, null, null, Limit.of(1)).get(0);
+
+        var expectedSummary = new ActivitySummaryRow(activity.getId(), activity.getType(), activity.getParticipants(),
+                activity.getVersion());
+
+        var summary = activityRepository.findSummaryById(activity.getId());
+        var summaries = activityRepository.findSummariesByIds(List.of(activity.getId(), Long.MAX_VALUE));
+        var participants = activityRepository.findParticipantsByType("Activity type 3");
+
+        BDDAssertions.then(summary)
+                .contains(expectedSummary);
+        BDDAssertions.then(activityRepository.findSummaryById(Long.MAX_VALUE))
+                .isEmpty();
+        BDDAssertions.then(summaries)
+                .containsExactly(expectedSummary);
+        BDDAssertions.then(participants)
+                .hasSize(SEEDED_ACTIVITIES / 10)
+                .containsOnly(2, 4, 6, 8);
+    }
+
+    @Test
+    public void givenChangeVersion_whenFindChangesAfter_thenPageInChangeOrder() {
+        var firstPage = activityRepository.findChangesAfter(900L, Long.MAX_VALUE, 950L, Limit.of(30));
+        var last = firstPage.get(firstPage.size() - 1);
+        var secondPage = activityRepository.findChangesAfter(last.getChangeVersion(), last.getId(), 950L,
+                Limit.of(30));
+
+        BDDAssertions.then(firstPage)
+                .extracting(Activity::getChangeVersion)
+                .containsExactlyElementsOf(LongStream.rangeClosed(901L, 930L).boxed().toList());
+        BDDAssertions.then(secondPage)
+                .extracting(Activity::getChangeVersion)
+                .containsExactlyElementsOf(LongStream.rangeClosed(931L, 950L).boxed().toList());
+    }
+
+    @Test
+    public void givenTypeFilter_whenRemoveTombstonedByType_thenDeleteEveryTombstonedActivity() {
+        BDDAssertions.then(activityTombstoneRepository.addTombstonesByType("Activity type 3", 5_000L))
+                .isEqualTo(100);
+        BDDAssertions.then(activityRepository.removeTombstonedByType("Activity type 3", 5_000L))
+                .isEqualTo(100);
+        BDDAssertions.then(activityTombstoneRepository.removeTombstonesOfExistingActivities(5_000L))
+                .isZero();
+
+        BDDAssertions.then(activityRepository.count())
+                .isEqualTo(SEEDED_ACTIVITIES - 100);
+        BDDAssertions.then(activityTombstoneRepository.findTombstonesAfter(4_999L, Long.MAX_VALUE, 5_000L,
+                        Limit.of(1_000)))
+                .hasSize(100);
+    }
+
+    @Test
+    public void whenExplainPage_thenUsePrimaryKey() {
+        activityRepository.findPage(100L, 2, null, Limit.of(51));
+
+        var plan = explainLastQuery(100L, 2, 2, null, null, 51);
+
+        BDDAssertions.then(plan)
+                .containsIgnoringCase("primary_key")
+                .doesNotContainIgnoringCase("tableScan");
+    }
+
+    @Test
+    public void whenExplainPageByType_thenUseTypeIndex() {
+        activityRepository.findPageByType(100L, "Activity type 3", 2, 4, Limit.of(51));
+
+        var plan = explainLastQuery("Activity type 3", 100L, 2, 2, 4, 4, 51);
+
+        BDDAssertions.then(plan)
+                .containsIgnoringCase("idx_activities_type_id_participants");
+    }
+
+    @Test
+    public void whenExplainNamePrefix_thenUseNameIndex() {
+        activityRepository.findByNameStartingWithOrderByNameAscIdAsc("Activity name 99", Limit.of(50));
+
+        var plan = explainLastQuery("Activity name 99%", 50);
+
+        BDDAssertions.then(plan)
+                .containsIgnoringCase("idx_activities_name_id");
+    }
+
+    @Test
+    public void whenExplainChanges_thenUseChangeVersionIndex() {
+        activityRepository.findChangesAfter(900L, Long.MAX_VALUE, 950L, Limit.of(30));
+
+        var plan = explainLastQuery(950L, 900L, 900L, Long.MAX_VALUE, 30);
+
+        BDDAssertions.then(plan)
+                .containsIgnoringCase("idx_activities_change_version");
+    }
+
+    // Plan of the last statement Hibernate sent, with the values bound to its parameters in order
+    private String explainLastQuery(Object... parameters) {
+        var sql = statementRecorder.getLastStatement();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement("explain " + sql)) {
+                BDDAssertions.then(statement.getParameterMetaData().getParameterCount())
+                        .as(sql)
+                        .isEqualTo(parameters.length);
+                for (var i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+                try (var resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the SQL that Hibernate renders, so the plans above are those of the queries the repository runs.
+     */
+    static class StatementRecorder implements StatementInspector {
+
+        private final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+
+        String getLastStatement() {
+            return statements.get(statements.size() - 1);
+        }
+    }
+
+    @TestConfiguration
+    static class StatementRecorderConfiguration {
+
+        @Bean
+        StatementRecorder statementRecorder() {
+            return new StatementRecorder();
+        }
+
+        @Bean
+        HibernatePropertiesCustomizer statementRecorderCustomizer(StatementRecorder statementRecorder) {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, statementRecorder);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.EntityManager;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ActivitySearchIndexTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+    @Mock
+    private ActivityTombstoneRepository activityTombstoneRepository;
+    @Mock
+    private ChangeVersionTracker changeVersionTracker;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ActivitySearchIndex activitySearchIndex;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        var changeFeedReader = new ChangeFeedReader(activityRepository, activityTombstoneRepository,
+                new SyncTaskExecutor());
+        activitySearchIndex = new ActivitySearchIndex(activityRepository, changeFeedReader, changeVersionTracker,
+                entityManager, transactionManager);
+
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(1L);
+        given(activityRepository.streamAll())
+                .willReturn(Stream.of(
+                        activity(1L, "Learn to play the guitar"),
+                        activity(2L, "Go to a guitar concert"),
+                        activity(3L, "Learn a new language"),
+                        activity(4L, "Guitarist masterclass")));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        activitySearchIndex.close();
+    }
+
+    @Test
+    public void givenExactWord_whenSearch_thenRankExactMatchesAbovePrefixMatches() {
+        var activities = activitySearchIndex.search("guitar", 10);
+
+        BDDAssertions.then(activities)
+                .extracting(Activity::getId)
+                .containsExactlyInAnyOrder(1L, 2L, 4L);
+        BDDAssertions.then(activities.get(2).getId())
+                .isEqualTo(4L);
+    }
+
+    @Test
+    public void givenSeveralWords_whenSearch_thenRequireEveryWord() {
+        var activities = activitySearchIndex.search("learn guit", 10);
+
+        BDDAssertions.then(activities)
+                .extracting(Activity::getName)
+                .containsExactly("Learn to play the guitar");
+    }
+
+    @Test
+    public void givenTypo_whenSearch_thenStillMatch() {
+        var activities = activitySearchIndex.search("langauge", 10);
+
+        BDDAssertions.then(activities)
+                .extracting(Activity::getId)
+                .containsExactly(3L);
+    }
+
+    @Test
+    public void givenStoredActivity_whenSearch_thenReturnAllFields() {
+        var activities = activitySearchIndex.search("concert", 10);
+
+        BDDAssertions.then(activities)
+                .containsExactly(activity(2L, "Go to a guitar concert"));
+        // Not part of equals, but needed to update the result with If-Match
+        BDDAssertions.then(activities.get(0).getVersion())
+                .isEqualTo(3L);
+        BDDAssertions.then(activities.get(0).getChangeVersion())
+                .isEqualTo(1L);
+    }
+
+    @Test
+    public void givenBlankQuery_whenSearch_thenReturnNothing() {
+        BDDAssertions.then(activitySearchIndex.search("  ", 10))
+                .isEmpty();
+    }
+
+    @Test
+    public void givenChangesSinceBuild_whenSearch_thenApplyUpsertsAndDeletions() {
+        activitySearchIndex.search("guitar", 10);
+
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(2L);
+        given(activityRepository.findChangesAfter(1L, Long.MAX_VALUE, 2L,
+                Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(activity(1L, "Learn to play the piano")));
+        given(activityTombstoneRepository.findTombstonesAfter(1L, Long.MAX_VALUE, 2L,
+                Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(new ActivityTombstone(2L, 2L)));
+
+        BDDAssertions.then(activitySearchIndex.search("guitar", 10))
+                .extracting(Activity::getId)
+                .containsExactly(4L);
+        BDDAssertions.then(activitySearchIndex.search("piano", 10))
+                .extracting(Activity::getId)
+                .containsExactly(1L);
+    }
+
+    private static Activity activity(Long id, String name) {
+        return Activity.builder()
+                .id(id)
+                .name(name)
+                .type("Activity type")
+                .participants(2)
+                .changeVersion(1L)
+                .version(3L)
+                .build();
+    }
+}
@@ -1,22 +1,42 @@
 package com.ounal.activity_manager;
 
+import jakarta.persistence.EntityManager;
 import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
-import static com.ounal.activity_manager.ActivityService.BORED_API_GET_RANDOM_ACTIVITY_URL;
 import static com.ounal.activity_manager.ActivityTestHelper.generateTestActivities;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 @ExtendWith(MockitoExtension.class)
 public class ActivityServiceTest {
@@ -24,10 +44,37 @@ public class ActivityServiceTest {
     @Mock
     private ActivityRepository activityRepository;
     @Mock
-    private RestTemplate restTemplate;
+    private ActivityTombstoneRepository activityTombstoneRepository;
+    @Mock
+    private ChangeVersionTracker changeVersionTracker;
+    @Mock
+    private RandomActivityPool randomActivityPool;
+    @Mock
+    private ActivitySearchIndex activitySearchIndex;
+    @Mock
+    private ActivitySnapshotStore activitySnapshotStore;
+    @Mock
+    private ActivityStatsCounters activityStatsCounters;
+    @Mock
+    private ActivityIngestCheckpointRepository activityIngestCheckpointRepository;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Spy
+    private RandomActivityPoolProperties randomActivityPoolProperties = withoutCoalesceWindow();
     @InjectMocks
     private ActivityService activityService;
 
+    @BeforeEach
+    void setUp() {
+        // Like JPA, return the saved entity unless a test stubs something more specific
+        lenient().when(activityRepository.save(any()))
+                .thenAnswer(returnsFirstArg());
+    }
+
     @Test
     public void whenCreateActivity_thenCallRepository() {
         var expectedActivity = generateTestActivities().get(0);
@@ -54,14 +101,15 @@ public class ActivityServiceTest {
 
     @Test
     public void whenCreateRandomActivity_thenCallRepository() {
+        givenTransactionTemplateRunsCallback();
         var activityDto = ActivityDto.builder()
                 .name("random name")
                 .type("random type")
                 .participants(24)
                 .build();
 
-        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
-                .willReturn(activityDto);
+        given(randomActivityPool.take(1))
+                .willReturn(List.of(activityDto));
 
         activityService.createRandomActivity();
 
@@ -73,31 +121,32 @@ public class ActivityServiceTest {
 
         BDDMockito.then(activityRepository)
                 .should()
-                .save(expectedActivity);
+                .saveAll(List.of(expectedActivity));
     }
 
     @Test
     public void givenThirdPartyApiReturnsNull_whenCreateRandomActivity_thenDoNotSaveActivity() {
-        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
-                .willReturn(null);
+        given(randomActivityPool.take(1))
+                .willReturn(List.of());
 
         activityService.createRandomActivity();
 
         BDDMockito.then(activityRepository)
                 .should(never())
-                .save(any());
+                .saveAll(any());
     }
 
     @Test
     public void whenCreateRandomActivity_thenReturnActivity() {
+        givenTransactionTemplateRunsCallback();
         var activityDto = ActivityDto.builder()
                 .name("random name")
                 .type("random type")
                 .participants(24)
                 .build();
 
-        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
-                .willReturn(activityDto);
+        given(randomActivityPool.take(1))
+                .willReturn(List.of(activityDto));
 
         var expectedActivity = Activity.builder()
                 .name("random name")
@@ -105,9 +154,6 @@ public class ActivityServiceTest {
                 .participants(24)
                 .build();
 
-        given(activityRepository.save(expectedActivity))
-                .willReturn(expectedActivity);
-
         var actualActivity = activityService.createRandomActivity();
 
         BDDAssertions.then(actualActivity)
@@ -116,8 +162,8 @@ public class ActivityServiceTest {
 
     @Test
     public void givenThirdPartyApiReturnsNull_whenCreateRandomActivity_thenReturnNull() {
-        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
-                .willReturn(null);
+        given(randomActivityPool.take(1))
+                .willReturn(List.of());
 
         var actualActivity = activityService.createRandomActivity();
 
@@ -126,102 +172,884 @@ public class ActivityServiceTest {
     }
 
     @Test
-    public void whenGetAllActivities_thenCallRepository() {
-        activityService.getAllActivities();
+    public void whenCreateRandomActivity_thenCountAddedActivityAndPublishCreatedEvent() {
+        givenTransactionTemplateRunsCallback();
+        given(randomActivityPool.take(1))
+                .willReturn(List.of(ActivityDto.builder()
+                        .name("random name")
+                        .type("random type")
+                        .participants(24)
+                        .build()));
+
+        var actualActivity = activityService.createRandomActivity();
+
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(actualActivity, 0L);
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.created(actualActivity));
+    }
+
+    @Test
+    public void whenCreateActivity_thenChangeTableVersionTag() {
+        var versionTagBefore = activityService.getTableVersionTag();
+
+        activityService.createActivity(generateTestActivities().get(0));
+
+        BDDAssertions.then(activityService.getTableVersionTag())
+                .isNotEqualTo(versionTagBefore);
+    }
+
+    @Test
+    public void whenGetActivities_thenKeepTableVersionTag() {
+        var versionTagBefore = activityService.getTableVersionTag();
+
+        activityService.getActivities(null, 20, new ActivityFilter(), "test-1");
+
+        BDDAssertions.then(activityService.getTableVersionTag())
+                .isEqualTo(versionTagBefore);
+    }
+
+    @Test
+    public void givenActivityExists_whenGetActivity_thenReturnActivity() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityRepository.findById(1L))
+                .willReturn(Optional.of(expectedActivity));
+
+        var actualActivity = activityService.getActivity(1L);
+
+        BDDAssertions.then(actualActivity)
+                .isEqualTo(expectedActivity);
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenGetActivity_thenThrowNotFound() {
+        given(activityRepository.findById(1L))
+                .willReturn(Optional.empty());
+
+        var thrown = catchThrowable(() -> activityService.getActivity(1L));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityNotFoundException.class);
+    }
+
+    @Test
+    public void givenTypeFilter_whenGetActivities_thenCallTypeQueryWithFilterAndOneExtraRow() {
+        var filter = ActivityFilter.builder()
+                .type("Activity type 1")
+                .minParticipants(2)
+                .maxParticipants(4)
+                .build();
+
+        activityService.getActivities(10L, 20, filter, "test-1");
 
         BDDMockito.then(activityRepository)
                 .should()
-                .findAll();
+                .findPageByType(10L, "Activity type 1", 2, 4, Limit.of(21));
     }
 
     @Test
-    public void givenActivities_whenGetAllActivities_thenReturnAllActivities() {
+    public void givenParticipantFilterOnly_whenGetActivities_thenCallPrimaryKeyQuery() {
+        var filter = ActivityFilter.builder()
+                .minParticipants(2)
+                .build();
+
+        activityService.getActivities(10L, 20, filter, "test-1");
+
+        BDDMockito.then(activityRepository)
+                .should()
+                .findPage(10L, 2, null, Limit.of(21));
+    }
+
+    @Test
+    public void whenGetActivitiesByNamePrefix_thenCallRepositoryWithClampedLimit() {
+        activityService.getActivitiesByNamePrefix("Activity", Integer.MAX_VALUE);
+
+        BDDMockito.then(activityRepository)
+                .should()
+                .findByNameStartingWithOrderByNameAscIdAsc("Activity", Limit.of(ActivityService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    public void whenSearchActivities_thenSearchIndexWithClampedLimit() {
         var expectedActivities = generateTestActivities();
 
-        given(activityRepository.findAll())
+        given(activitySearchIndex.search("Activity", ActivityService.MAX_PAGE_SIZE))
                 .willReturn(expectedActivities);
 
-        var actualActivities = activityService.getAllActivities();
+        var actualActivities = activityService.searchActivities("Activity", Integer.MAX_VALUE);
 
         BDDAssertions.then(actualActivities)
                 .isEqualTo(expectedActivities);
     }
 
     @Test
-    public void givenActivityExists_whenUpdateActivity_thenCallRepositoryInCorrectOrder() {
-        var expectedActivity = generateTestActivities().get(0);
+    public void givenNoCursor_whenGetActivities_thenStartFromBeginning() {
+        activityService.getActivities(null, 20, new ActivityFilter(), "test-1");
 
-        given(activityRepository.findById(1L))
-                .willReturn(Optional.of(expectedActivity));
+        BDDMockito.then(activityRepository)
+                .should()
+                .findPage(0L, null, null, Limit.of(21));
+    }
+
+    @Test
+    public void givenLimitAboveMaximum_whenGetActivities_thenClampLimit() {
+        activityService.getActivities(null, Integer.MAX_VALUE, new ActivityFilter(), "test-1");
 
-        activityService.updateActivity(1L, expectedActivity);
+        BDDMockito.then(activityRepository)
+                .should()
+                .findPage(0L, null, null, Limit.of(ActivityService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    public void givenLastPage_whenGetActivities_thenReturnAllActivitiesWithoutCursor() {
+        var expectedActivities = generateTestActivities();
 
-        var inOrder = Mockito.inOrder(activityRepository);
+        given(activityRepository.findPage(0L, null, null, Limit.of(3)))
+                .willReturn(expectedActivities);
+
+        var actualPage = activityService.getActivities(null, 2, new ActivityFilter(), "test-1");
+
+        BDDAssertions.then(actualPage.getItems())
+                .isEqualTo(expectedActivities);
+        BDDAssertions.then(actualPage.getNextCursor())
+                .isNull();
+    }
+
+    @Test
+    public void givenMoreActivities_whenGetActivities_thenReturnPageWithCursor() {
+        var expectedActivities = generateTestActivities();
+        expectedActivities.get(0).setId(1L);
+        expectedActivities.get(1).setId(2L);
+
+        given(activityRepository.findPage(0L, null, null, Limit.of(2)))
+                .willReturn(expectedActivities);
 
+        var actualPage = activityService.getActivities(null, 1, new ActivityFilter(), "test-1");
+
+        BDDAssertions.then(actualPage.getItems())
+                .containsExactly(expectedActivities.get(0));
+        BDDAssertions.then(actualPage.getNextCursor())
+                .isEqualTo(1L);
+    }
+
+    @Test
+    public void givenSnapshotAvailable_whenGetActivities_thenServeFromSnapshotWithoutQuerying() {
+        var expectedPage = new ActivityPage(generateTestActivities(), null);
+        var filter = ActivityFilter.builder()
+                .type("Activity type 1")
+                .build();
+
+        given(activitySnapshotStore.isAvailable())
+                .willReturn(true);
+        given(activitySnapshotStore.getActivities(10L, ActivityService.MAX_PAGE_SIZE, filter))
+                .willReturn(expectedPage);
+
+        var actualPage = activityService.getActivities(10L, Integer.MAX_VALUE, filter, "test-1");
+
+        BDDAssertions.then(actualPage)
+                .isEqualTo(expectedPage);
         BDDMockito.then(activityRepository)
-                .should(inOrder)
-                .findById(1L);
+                .shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void givenSnapshotAvailableAndActivityDoesNotExist_whenGetActivity_thenThrowNotFound() {
+        given(activitySnapshotStore.isAvailable())
+                .willReturn(true);
+        given(activitySnapshotStore.getActivity(1L))
+                .willReturn(Optional.empty());
 
+        var thrown = catchThrowable(() -> activityService.getActivity(1L));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityNotFoundException.class);
         BDDMockito.then(activityRepository)
-                .should(inOrder)
-                .save(expectedActivity);
+                .shouldHaveNoInteractions();
     }
 
     @Test
-    public void givenActivityDoesNotExist_whenUpdateActivity_thenDoNotSaveActivity() {
-        var expectedActivity = generateTestActivities().get(0);
+    public void givenActivities_whenExportActivities_thenPassEachActivityToConsumerAndDetachIt() {
+        var expectedActivities = generateTestActivities();
 
-        given(activityRepository.findById(1L))
-                .willReturn(Optional.empty());
+        given(activityRepository.streamAll())
+                .willReturn(expectedActivities.stream());
+
+        var actualActivities = new ArrayList<Activity>();
+
+        activityService.exportActivities(actualActivities::add);
+
+        BDDAssertions.then(actualActivities)
+                .isEqualTo(expectedActivities);
 
-        activityService.updateActivity(1L, expectedActivity);
+        BDDMockito.then(entityManager)
+                .should()
+                .detach(expectedActivities.get(0));
+        BDDMockito.then(entityManager)
+                .should()
+                .detach(expectedActivities.get(1));
+    }
+
+    @Test
+    public void givenActivityExists_whenUpdateActivity_thenIssueSingleUpdateWithoutLoadingIt() {
+        givenTransactionTemplateExecutesCallback();
+        var updatedActivity = generateTestActivities().get(0);
+
+        given(changeVersionTracker.begin())
+                .willReturn(7L);
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(summary(3L)));
+        given(activityRepository.updateById(1L, "Activity name 1", "Activity type 1", 3, 7L, null))
+                .willReturn(1);
 
-        var inOrder = Mockito.inOrder(activityRepository);
+        var actualActivity = activityService.updateActivity(1L, updatedActivity, null);
 
+        BDDAssertions.then(actualActivity.getId())
+                .isEqualTo(1L);
+        BDDAssertions.then(actualActivity.getChangeVersion())
+                .isEqualTo(7L);
+        BDDAssertions.then(actualActivity.getVersion())
+                .isEqualTo(4L);
         BDDMockito.then(activityRepository)
-                .should(inOrder)
-                .findById(1L);
+                .should(never())
+                .findById(any());
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .save(any());
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.updated(actualActivity));
+    }
 
+    @Test
+    public void givenExpectedVersion_whenUpdateActivity_thenReturnNextVersionWithoutQueryingIt() {
+        givenTransactionTemplateExecutesCallback();
+        var updatedActivity = generateTestActivities().get(0);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(summary(2L)));
+        given(activityRepository.updateById(1L, "Activity name 1", "Activity type 1", 3, 0L, 2L))
+                .willReturn(1);
+
+        var actualActivity = activityService.updateActivity(1L, updatedActivity, 2L);
+
+        BDDAssertions.then(actualActivity.getVersion())
+                .isEqualTo(3L);
         BDDMockito.then(activityRepository)
-                .should(inOrder, never())
-                .save(expectedActivity);
+                .should(never())
+                .findVersionById(any());
     }
 
     @Test
-    public void givenActivityExists_whenUpdateActivity_thenReturnActivity() {
-        var expectedActivity = generateTestActivities().get(0);
+    public void givenActivityDoesNotExist_whenUpdateActivity_thenThrowNotFound() {
+        givenTransactionTemplateExecutesCallback();
+        var updatedActivity = generateTestActivities().get(0);
 
-        given(activityRepository.findById(1L))
-                .willReturn(Optional.of(expectedActivity));
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.empty());
 
-        given(activityRepository.save(expectedActivity))
-                .willReturn(expectedActivity);
+        var thrown = catchThrowable(() -> activityService.updateActivity(1L, updatedActivity, null));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityNotFoundException.class);
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .updateById(any(), any(), any(), any(), anyLong(), any());
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void givenStaleExpectedVersion_whenUpdateActivity_thenThrowPreconditionFailed() {
+        givenTransactionTemplateExecutesCallback();
+        var updatedActivity = generateTestActivities().get(0);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(summary(3L)));
+
+        var thrown = catchThrowable(() -> activityService.updateActivity(1L, updatedActivity, 2L));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityPreconditionFailedException.class);
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .updateById(any(), any(), any(), any(), anyLong(), any());
+    }
+
+    @Test
+    public void givenExpectedVersionAndActivityDoesNotExist_whenUpdateActivity_thenThrowNotFound() {
+        givenTransactionTemplateExecutesCallback();
+        var updatedActivity = generateTestActivities().get(0);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.empty());
+
+        var thrown = catchThrowable(() -> activityService.updateActivity(1L, updatedActivity, 2L));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityNotFoundException.class);
+    }
+
+    @Test
+    public void givenActivityExists_whenPatchActivity_thenUpdatePatchedColumnsAndReturnActivity() {
+        givenTransactionTemplateExecutesCallback();
+        var patch = new ActivityPatch(Map.of("name", "Patched name"));
+        var patchedActivity = generateTestActivities().get(0);
 
-        var actualActivity = activityService.updateActivity(1L, expectedActivity);
+        given(changeVersionTracker.begin())
+                .willReturn(7L);
+        given(activityRepository.patchById(1L, patch, 7L, 2L))
+                .willReturn(1);
+        given(activityRepository.findById(1L))
+                .willReturn(Optional.of(patchedActivity));
+
+        var actualActivity = activityService.patchActivity(1L, patch, 2L);
 
         BDDAssertions.then(actualActivity)
-                .isEqualTo(expectedActivity);
+                .isSameAs(patchedActivity);
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(7L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.updated(patchedActivity));
     }
 
     @Test
-    public void givenActivityDoesNotExist_whenUpdateActivity_thenReturnNull() {
-        var expectedActivity = generateTestActivities().get(0);
+    public void givenPatchOfParticipants_whenPatchActivity_thenMoveStatsFromReplacedValues() {
+        givenTransactionTemplateExecutesCallback();
+        var patch = new ActivityPatch(Map.of("participants", 4));
+        var previous = summary(2L);
+        var patchedActivity = generateTestActivities().get(0);
 
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(previous));
+        given(activityRepository.patchById(1L, patch, 0L, null))
+                .willReturn(1);
         given(activityRepository.findById(1L))
-                .willReturn(Optional.empty());
+                .willReturn(Optional.of(patchedActivity));
 
-        var actualActivity = activityService.updateActivity(1L, expectedActivity);
+        activityService.patchActivity(1L, patch, null);
+
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(previous, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(patchedActivity, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+    }
+
+    @Test
+    public void givenStaleVersion_whenPatchActivity_thenThrowPreconditionFailed() {
+        givenTransactionTemplateExecutesCallback();
+        var patch = new ActivityPatch(Map.of("name", "Patched name"));
+
+        given(activityRepository.patchById(1L, patch, 0L, 2L))
+                .willReturn(0);
+        given(activityRepository.existsById(1L))
+                .willReturn(true);
+
+        var thrown = catchThrowable(() -> activityService.patchActivity(1L, patch, 2L));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(ActivityPreconditionFailedException.class);
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void givenEmptyPatch_whenPatchActivity_thenReturnActivityWithoutWriting() {
+        var existingActivity = generateTestActivities().get(0);
+        existingActivity.setVersion(2L);
+
+        given(activityRepository.findById(1L))
+                .willReturn(Optional.of(existingActivity));
+
+        var actualActivity = activityService.patchActivity(1L, new ActivityPatch(), 2L);
 
         BDDAssertions.then(actualActivity)
-                .isNull();
+                .isSameAs(existingActivity);
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .patchById(any(), any(), anyLong(), any());
+    }
+
+    @Test
+    public void givenActivityExists_whenDeleteActivity_thenDeleteAndAddTombstone() {
+        givenTransactionTemplateExecutesCallback();
+
+        given(changeVersionTracker.begin())
+                .willReturn(7L);
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(summary(3L)));
+
+        var deleted = activityService.deleteActivity(1L);
+
+        BDDAssertions.then(deleted)
+                .isTrue();
+        BDDMockito.then(activityRepository)
+                .should()
+                .removeById(1L);
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .findById(any());
+        BDDMockito.then(entityManager)
+                .should()
+                .persist(new ActivityTombstone(1L, 7L));
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(7L);
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.deleted(1L, 7L));
+    }
+
+    @Test
+    public void givenActivityDoesNotExist_whenDeleteActivity_thenDoNotAddTombstone() {
+        givenTransactionTemplateExecutesCallback();
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.empty());
+
+        var deleted = activityService.deleteActivity(1L);
+
+        BDDAssertions.then(deleted)
+                .isFalse();
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .removeById(any());
+        BDDMockito.then(entityManager)
+                .should(never())
+                .persist(any());
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void givenActivitiesOfType_whenDeleteActivitiesByType_thenDeleteTombstonedRows() {
+        givenTransactionTemplateExecutesCallback();
+
+        given(changeVersionTracker.begin())
+                .willReturn(7L);
+        given(activityRepository.findParticipantsByType("social"))
+                .willReturn(List.of(1, 2, 2));
+        given(activityTombstoneRepository.addTombstonesByType("social", 7L))
+                .willReturn(3);
+        given(activityRepository.removeTombstonedByType("social", 7L))
+                .willReturn(3);
+
+        var deleted = activityService.deleteActivitiesByType("social");
+
+        BDDAssertions.then(deleted)
+                .isEqualTo(3);
+        BDDMockito.then(activityTombstoneRepository)
+                .should(never())
+                .removeTombstonesOfExistingActivities(anyLong());
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(Activity.builder().type("social").participants(1).build(), 7L);
+        BDDMockito.then(activityStatsCounters)
+                .should(times(2))
+                .removed(Activity.builder().type("social").participants(2).build(), 7L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(7L);
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.resync());
+    }
+
+    @Test
+    public void givenRowChangedConcurrently_whenDeleteActivitiesByType_thenRemoveItsTombstone() {
+        givenTransactionTemplateExecutesCallback();
+
+        given(changeVersionTracker.begin())
+                .willReturn(7L);
+        given(activityRepository.findParticipantsByType("social"))
+                .willReturn(List.of(1));
+        given(activityTombstoneRepository.addTombstonesByType("social", 7L))
+                .willReturn(3);
+        given(activityRepository.removeTombstonedByType("social", 7L))
+                .willReturn(2);
+
+        var deleted = activityService.deleteActivitiesByType("social");
+
+        BDDAssertions.then(deleted)
+                .isEqualTo(2);
+        BDDMockito.then(activityTombstoneRepository)
+                .should()
+                .removeTombstonesOfExistingActivities(7L);
+        // More rows were deleted than locked, so the values of some were never read
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .removed(any(), anyLong());
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .reconcileSoon();
+    }
+
+    @Test
+    public void givenNoActivitiesOfType_whenDeleteActivitiesByType_thenDoNotDelete() {
+        givenTransactionTemplateExecutesCallback();
+
+        given(activityTombstoneRepository.addTombstonesByType("social", 0L))
+                .willReturn(0);
+
+        var deleted = activityService.deleteActivitiesByType("social");
+
+        BDDAssertions.then(deleted)
+                .isZero();
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .removeTombstonedByType(any(), anyLong());
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void whenCreateActivity_thenAddToStats() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        activityService.createActivity(expectedActivity);
+
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(expectedActivity, 0L);
+    }
+
+    @Test
+    public void givenActivityExists_whenUpdateActivity_thenMoveStatsFromReplacedValues() {
+        givenTransactionTemplateExecutesCallback();
+        var updatedActivity = generateTestActivities().get(0);
+        var previous = summary(2L);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(previous));
+        given(activityRepository.updateById(1L, "Activity name 1", "Activity type 1", 3, 0L, 2L))
+                .willReturn(1);
+
+        activityService.updateActivity(1L, updatedActivity, 2L);
+
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(previous, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(updatedActivity, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
     }
 
     @Test
-    public void whenDeleteActivity_thenCallRepository() {
+    public void givenActivityExists_whenDeleteActivity_thenRemoveDeletedValuesFromStats() {
+        givenTransactionTemplateExecutesCallback();
+        var deleted = summary(3L);
+
+        given(activityRepository.findSummaryById(1L))
+                .willReturn(Optional.of(deleted));
+
         activityService.deleteActivity(1L);
 
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(deleted, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+    }
+
+    @Test
+    public void givenIngestedActivities_whenCreateIngestedActivities_thenInsertAndMoveCheckpointTogether() {
+        givenTransactionTemplateRunsCallback();
+        var activities = generateTestActivities();
+
+        given(changeVersionTracker.begin())
+                .willReturn(5L);
+
+        activityService.createIngestedActivities(activities, 12L);
+
+        var inOrder = Mockito.inOrder(activityRepository, activityIngestCheckpointRepository);
+        inOrder.verify(activityRepository).saveAll(activities);
+        inOrder.verify(activityIngestCheckpointRepository).updateCommittedSequence(12L);
+        inOrder.verify(activityRepository).flush();
+        BDDAssertions.then(activities)
+                .extracting(Activity::getChangeVersion)
+                .containsOnly(5L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(activities.get(1), 5L);
+        activities.forEach(activity -> BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.created(activity)));
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(ActivityEvent.resync());
+    }
+
+    @Test
+    public void givenNoActivities_whenCreateIngestedActivities_thenOnlyMoveCheckpoint() {
+        givenTransactionTemplateRunsCallback();
+
+        activityService.createIngestedActivities(List.of(), 12L);
+
+        BDDMockito.then(activityIngestCheckpointRepository)
+                .should()
+                .updateCommittedSequence(12L);
+        BDDMockito.then(eventPublisher)
+                .should(never())
+                .publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void whenCreateActivity_thenStampChangeVersion() {
+        given(changeVersionTracker.begin())
+                .willReturn(3L);
+
+        var activity = generateTestActivities().get(0);
+
+        activityService.createActivity(activity);
+
+        BDDAssertions.then(activity.getChangeVersion())
+                .isEqualTo(3L);
+        BDDMockito.then(changeVersionTracker)
+                .should()
+                .end(3L);
+    }
+
+    @Test
+    public void whenCreateActivity_thenPublishCreatedEvent() {
+        var expectedActivity = generateTestActivities().get(0);
+
+        given(activityRepository.save(expectedActivity))
+                .willReturn(expectedActivity);
+
+        activityService.createActivity(expectedActivity);
+
+        BDDMockito.then(eventPublisher)
+                .should()
+                .publishEvent(ActivityEvent.created(expectedActivity));
+    }
+
+    @Test
+    public void whenGetChanges_thenReturnChangesUpToSafeVersion() {
+        var expectedUpserts = List.of(
+                Activity.builder().id(1L).changeVersion(5L).build(),
+                Activity.builder().id(3L).changeVersion(8L).build());
+
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(9L);
+        given(activityRepository.findChangesAfter(4L, Long.MAX_VALUE, 9L, Limit.of(11)))
+                .willReturn(expectedUpserts);
+        given(activityTombstoneRepository.findTombstonesAfter(4L, Long.MAX_VALUE, 9L, Limit.of(11)))
+                .willReturn(List.of(new ActivityTombstone(2L, 6L)));
+
+        var actualChanges = activityService.getChanges(4L, null, 10);
+
+        BDDAssertions.then(actualChanges)
+                .isEqualTo(new ActivityChanges(expectedUpserts, List.of(2L), 9L, null));
+    }
+
+    @Test
+    public void givenMoreChangesThanLimit_whenGetChanges_thenReturnContinuationInChangeOrder() {
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(9L);
+        given(activityRepository.findChangesAfter(5L, 1L, 9L, Limit.of(3)))
+                .willReturn(List.of(
+                        Activity.builder().id(3L).changeVersion(5L).build(),
+                        Activity.builder().id(1L).changeVersion(7L).build()));
+        given(activityTombstoneRepository.findTombstonesAfter(5L, 1L, 9L, Limit.of(3)))
+                .willReturn(List.of(new ActivityTombstone(2L, 5L), new ActivityTombstone(4L, 6L)));
+
+        var actualChanges = activityService.getChanges(5L, 1L, 2);
+
+        BDDAssertions.then(actualChanges.getDeletions())
+                .containsExactly(2L);
+        BDDAssertions.then(actualChanges.getUpserts())
+                .extracting(Activity::getId)
+                .containsExactly(3L);
+        BDDAssertions.then(actualChanges.getVersion())
+                .isEqualTo(5L);
+        BDDAssertions.then(actualChanges.getNextCursor())
+                .isEqualTo(3L);
+    }
+
+    /**
+     * A batch write shares one version, so paging through it continues at the safe version itself.
+     */
+    @Test
+    public void givenVersionLargerThanLimit_whenGetChangesWithCursor_thenReturnRestOfVersion() {
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(5L);
+        given(activityRepository.findChangesAfter(4L, Long.MAX_VALUE, 5L, Limit.of(3)))
+                .willReturn(List.of(
+                        Activity.builder().id(1L).changeVersion(5L).build(),
+                        Activity.builder().id(2L).changeVersion(5L).build(),
+                        Activity.builder().id(3L).changeVersion(5L).build()));
+        given(activityRepository.findChangesAfter(5L, 2L, 5L, Limit.of(3)))
+                .willReturn(List.of(
+                        Activity.builder().id(3L).changeVersion(5L).build(),
+                        Activity.builder().id(4L).changeVersion(5L).build()));
+
+        var firstPage = activityService.getChanges(4L, null, 2);
+        var secondPage = activityService.getChanges(firstPage.getVersion(), firstPage.getNextCursor(), 2);
+
+        BDDAssertions.then(firstPage)
+                .isEqualTo(new ActivityChanges(List.of(
+                        Activity.builder().id(1L).changeVersion(5L).build(),
+                        Activity.builder().id(2L).changeVersion(5L).build()), List.of(), 5L, 2L));
+        BDDAssertions.then(secondPage)
+                .isEqualTo(new ActivityChanges(List.of(
+                        Activity.builder().id(3L).changeVersion(5L).build(),
+                        Activity.builder().id(4L).changeVersion(5L).build()), List.of(), 5L, null));
+    }
+
+    @Test
+    public void givenNoNewChanges_whenGetChanges_thenDoNotQueryRepositories() {
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(4L);
+
+        var actualChanges = activityService.getChanges(4L, null, 10);
+
+        BDDAssertions.then(actualChanges)
+                .isEqualTo(new ActivityChanges(List.of(), List.of(), 4L, null));
+        BDDMockito.then(activityRepository)
+                .should(never())
+                .findChangesAfter(anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void whenCreateActivities_thenSaveActivitiesAndReturnCreatedResults() {
+        givenTransactionTemplateRunsCallback();
+
+        var activities = new ArrayList<>(generateTestActivities());
+
+        var actualResults = activityService.createActivities(activities);
+
+        BDDMockito.then(activityRepository)
+                .should()
+                .saveAll(activities);
+        BDDMockito.then(activityRepository)
+                .should()
+                .flush();
+
+        BDDAssertions.then(actualResults)
+                .extracting(ActivityBatchResult::getStatus)
+                .containsExactly(ActivityBatchResult.Status.CREATED, ActivityBatchResult.Status.CREATED);
+    }
+
+    @Test
+    public void givenChunkFails_whenCreateActivities_thenReturnFailedResults() {
+        givenTransactionTemplateRunsCallback();
+
+        var activities = new ArrayList<>(generateTestActivities());
+
+        willThrow(new DataIntegrityViolationException("constraint violated"))
+                .given(activityRepository)
+                .flush();
+
+        var actualResults = activityService.createActivities(activities);
+
+        BDDAssertions.then(actualResults)
+                .extracting(ActivityBatchResult::getStatus)
+                .containsExactly(ActivityBatchResult.Status.FAILED, ActivityBatchResult.Status.FAILED);
+    }
+
+    @Test
+    public void givenSomeActivitiesDoNotExist_whenUpdateActivities_thenUpdateExistingAndReportMissing() {
+        givenTransactionTemplateRunsCallback();
+
+        var existingActivity = generateTestActivities().get(0);
+        existingActivity.setId(1L);
+
+        given(activityRepository.findAllById(List.of(1L, 2L)))
+                .willReturn(List.of(existingActivity));
+
+        var updatedActivity = generateTestActivities().get(1);
+        updatedActivity.setId(1L);
+
+        var missingActivity = generateTestActivities().get(1);
+        missingActivity.setId(2L);
+
+        var actualResults = activityService.updateActivities(List.of(updatedActivity, missingActivity));
+
+        BDDAssertions.then(actualResults)
+                .extracting(ActivityBatchResult::getStatus)
+                .containsExactly(ActivityBatchResult.Status.UPDATED, ActivityBatchResult.Status.NOT_FOUND);
+        BDDAssertions.then(existingActivity)
+                .isEqualTo(updatedActivity);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(Activity.builder().type("Activity type 1").participants(3).build(), 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .added(existingActivity, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+    }
+
+    @Test
+    public void givenSomeIdsDoNotExist_whenDeleteActivities_thenDeleteExistingAndReportMissing() {
+        givenTransactionTemplateRunsCallback();
+
+        var existing = summary(3L);
+
+        given(activityRepository.findSummariesByIds(List.of(1L, 2L)))
+                .willReturn(List.of(existing));
+
+        var actualResults = activityService.deleteActivities(List.of(1L, 2L));
+
         BDDMockito.then(activityRepository)
                 .should()
-                .deleteById(1L);
+                .deleteAllByIdInBatch(Set.of(1L));
+        BDDMockito.then(activityStatsCounters)
+                .should()
+                .removed(existing, 0L);
+        BDDMockito.then(activityStatsCounters)
+                .should(never())
+                .reconcileSoon();
+
+        BDDAssertions.then(actualResults)
+                .extracting(ActivityBatchResult::getStatus)
+                .containsExactly(ActivityBatchResult.Status.DELETED, ActivityBatchResult.Status.NOT_FOUND);
+    }
+
+    private static ActivitySummaryRow summary(Long version) {
+        return new ActivitySummaryRow(1L, "Activity type 2", 5, version);
+    }
+
+    // Serve every call on its own, so the tests do not wait for others to join
+    private static RandomActivityPoolProperties withoutCoalesceWindow() {
+        var properties = new RandomActivityPoolProperties();
+        properties.setCoalesceWindow(Duration.ZERO);
+        return properties;
+    }
+
+    private void givenTransactionTemplateExecutesCallback() {
+        given(transactionTemplate.execute(any()))
+                .willAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    private void givenTransactionTemplateRunsCallback() {
+        willAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).given(transactionTemplate).executeWithoutResult(any());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,203 @@
+package com.ounal.activity_manager;
+
+import jakarta.persistence.EntityManager;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class ActivitySnapshotStoreTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+    @Mock
+    private ActivityTombstoneRepository activityTombstoneRepository;
+    @Mock
+    private ChangeVersionTracker changeVersionTracker;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @TempDir
+    private Path directory;
+
+    private ActivitySnapshotProperties properties;
+    private ActivitySnapshotStore activitySnapshotStore;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ActivitySnapshotProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory);
+        activitySnapshotStore = newStore();
+
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(1L);
+        given(activityRepository.streamAll())
+                .willReturn(Stream.of(
+                        activity(1L, "Learn to play the guitar", "music", 1),
+                        activity(2L, "Go to a concert", "music", 4),
+                        activity(3L, "Learn a new language", "education", 1),
+                        activity(4L, "Host a dinner party", "social", null)));
+    }
+
+    @Test
+    public void givenSnapshot_whenGetActivities_thenReturnPagesInIdOrder() {
+        activitySnapshotStore.catchUp();
+
+        var firstPage = activitySnapshotStore.getActivities(0L, 2, new ActivityFilter());
+        var lastPage = activitySnapshotStore.getActivities(firstPage.getNextCursor(), 2, new ActivityFilter());
+
+        BDDAssertions.then(firstPage.getItems())
+                .extracting(Activity::getId)
+                .containsExactly(1L, 2L);
+        BDDAssertions.then(firstPage.getNextCursor())
+                .isEqualTo(2L);
+        BDDAssertions.then(lastPage.getItems())
+                .extracting(Activity::getId)
+                .containsExactly(3L, 4L);
+        BDDAssertions.then(lastPage.getNextCursor())
+                .isNull();
+    }
+
+    @Test
+    public void givenFilter_whenGetActivities_thenReturnOnlyMatchingActivities() {
+        activitySnapshotStore.catchUp();
+
+        var typeAndParticipants = ActivityFilter.builder()
+                .type("music")
+                .minParticipants(2)
+                .build();
+        var participantsOnly = ActivityFilter.builder()
+                .maxParticipants(10)
+                .build();
+        var unknownType = ActivityFilter.builder()
+                .type("sports")
+                .build();
+
+        BDDAssertions.then(activitySnapshotStore.getActivities(0L, 10, typeAndParticipants).getItems())
+                .extracting(Activity::getId)
+                .containsExactly(2L);
+        // Like the database queries, an activity without participants never matches a bound
+        BDDAssertions.then(activitySnapshotStore.getActivities(0L, 10, participantsOnly).getItems())
+                .extracting(Activity::getId)
+                .containsExactly(1L, 2L, 3L);
+        BDDAssertions.then(activitySnapshotStore.getActivities(0L, 10, unknownType).getItems())
+                .isEmpty();
+    }
+
+    @Test
+    public void givenStoredActivity_whenGetActivity_thenReturnAllFields() {
+        activitySnapshotStore.catchUp();
+
+        var activity = activitySnapshotStore.getActivity(4L);
+
+        BDDAssertions.then(activity)
+                .contains(activity(4L, "Host a dinner party", "social", null));
+        BDDAssertions.then(activity.get().getVersion())
+                .isEqualTo(3L);
+        BDDAssertions.then(activity.get().getChangeVersion())
+                .isEqualTo(1L);
+        BDDAssertions.then(activitySnapshotStore.getActivity(5L))
+                .isEmpty();
+    }
+
+    @Test
+    public void givenChangesSinceSnapshot_whenGetActivities_thenMergeUpsertsAndDeletions() {
+        activitySnapshotStore.catchUp();
+        givenChangesUpToVersionTwo();
+
+        var page = activitySnapshotStore.getActivities(0L, 10, new ActivityFilter());
+
+        BDDAssertions.then(page.getItems())
+                .containsExactly(
+                        activity(1L, "Learn to play the piano", "music", 1),
+                        activity(3L, "Learn a new language", "education", 1),
+                        activity(4L, "Host a dinner party", "social", null),
+                        activity(5L, "Go hiking", "recreational", 2));
+        BDDAssertions.then(activitySnapshotStore.getActivity(2L))
+                .isEmpty();
+    }
+
+    @Test
+    public void givenOverlayReachesThreshold_whenCatchUp_thenCompactIntoNewSnapshot() throws IOException {
+        properties.setCompactionThreshold(2);
+        activitySnapshotStore.catchUp();
+        givenChangesUpToVersionTwo();
+
+        activitySnapshotStore.catchUp();
+
+        try (var files = Files.list(directory)) {
+            BDDAssertions.then(files.map(file -> file.getFileName().toString()))
+                    .containsExactly(ActivitySnapshotStore.FILE_PREFIX + 2 + ActivitySnapshotStore.FILE_SUFFIX);
+        }
+        BDDAssertions.then(activitySnapshotStore.getActivities(0L, 10, new ActivityFilter()).getItems())
+                .extracting(Activity::getId)
+                .containsExactly(1L, 3L, 4L, 5L);
+        BDDAssertions.then(activitySnapshotStore.getActivity(1L).get().getName())
+                .isEqualTo("Learn to play the piano");
+    }
+
+    @Test
+    public void givenSnapshotFromEarlierRun_whenCatchUp_thenReopenItWithoutReadingTable() {
+        activitySnapshotStore.catchUp();
+
+        var restartedStore = newStore();
+        restartedStore.catchUp();
+
+        BDDAssertions.then(restartedStore.getActivities(0L, 10, new ActivityFilter()).getItems())
+                .extracting(Activity::getId)
+                .containsExactly(1L, 2L, 3L, 4L);
+        BDDMockito.then(activityRepository)
+                .should(times(1))
+                .streamAll();
+    }
+
+    private ActivitySnapshotStore newStore() {
+        var changeFeedReader = new ChangeFeedReader(activityRepository, activityTombstoneRepository,
+                new SyncTaskExecutor());
+        return new ActivitySnapshotStore(activityRepository, changeFeedReader, changeVersionTracker, entityManager,
+                transactionManager, new SyncTaskExecutor(), properties);
+    }
+
+    private void givenChangesUpToVersionTwo() {
+        given(changeVersionTracker.getSafeVersion())
+                .willReturn(2L);
+        given(activityRepository.findChangesAfter(1L, Long.MAX_VALUE, 2L,
+                Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(
+                        activity(1L, "Learn to play the piano", "music", 1),
+                        activity(5L, "Go hiking", "recreational", 2)));
+        given(activityTombstoneRepository.findTombstonesAfter(1L, Long.MAX_VALUE, 2L,
+                Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(new ActivityTombstone(2L, 2L)));
+    }
+
+    private static Activity activity(Long id, String name, String type, Integer participants) {
+        return Activity.builder()
+                .id(id)
+                .name(name)
+                .type(type)
+                .participants(participants)
+                .changeVersion(1L)
+                .version(3L)
+                .build();
+    }
+}
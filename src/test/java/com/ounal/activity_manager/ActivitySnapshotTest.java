@@ -0,0 +1,104 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class ActivitySnapshotTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void givenActivities_whenWriteAndOpen_thenReadEveryColumnBack() throws IOException {
+        var file = directory.resolve("activities.snapshot");
+        var activities = List.of(
+                Activity.builder().id(3L).name("Learn to play the guitar").type("music").participants(1)
+                        .changeVersion(7L).version(2L).build(),
+                Activity.builder().id(8L).name("Besuch im Café").type("music").participants(4)
+                        .changeVersion(9L).version(0L).build(),
+                Activity.builder().id(12L).build());
+
+        ActivitySnapshot.write(file, activities.iterator(), 9L);
+        var snapshot = ActivitySnapshot.open(file);
+
+        BDDAssertions.then(snapshot.size())
+                .isEqualTo(3);
+        BDDAssertions.then(snapshot.getChangeVersion())
+                .isEqualTo(9L);
+        for (var row = 0; row < snapshot.size(); row++) {
+            var expected = activities.get(row);
+            var actual = snapshot.toActivity(row);
+
+            BDDAssertions.then(actual)
+                    .isEqualTo(expected);
+            BDDAssertions.then(actual.getChangeVersion())
+                    .isEqualTo(expected.getChangeVersion());
+            BDDAssertions.then(actual.getVersion())
+                    .isEqualTo(expected.getVersion());
+        }
+        BDDAssertions.then(snapshot.typeCode(0))
+                .isEqualTo(snapshot.typeCode(1))
+                .isEqualTo(snapshot.findTypeCode("music"));
+        BDDAssertions.then(snapshot.typeCode(2))
+                .isEqualTo(ActivitySnapshot.NO_TYPE);
+        BDDAssertions.then(snapshot.hasParticipants(2))
+                .isFalse();
+    }
+
+    @Test
+    public void givenSnapshot_whenFindRow_thenLocateIdsByBinarySearch() throws IOException {
+        var snapshot = ActivitySnapshot.write(directory.resolve("activities.snapshot"), List.of(
+                Activity.builder().id(3L).build(),
+                Activity.builder().id(8L).build(),
+                Activity.builder().id(12L).build()).iterator(), 1L);
+
+        BDDAssertions.then(snapshot.findRow(8L))
+                .isEqualTo(1);
+        BDDAssertions.then(snapshot.findRow(9L))
+                .isEqualTo(-1);
+        BDDAssertions.then(snapshot.firstRowAfter(0L))
+                .isZero();
+        BDDAssertions.then(snapshot.firstRowAfter(8L))
+                .isEqualTo(2);
+        BDDAssertions.then(snapshot.firstRowAfter(12L))
+                .isEqualTo(3);
+    }
+
+    @Test
+    public void givenActivitiesOutOfIdOrder_whenWrite_thenThrowWithoutLeavingFiles() throws IOException {
+        var activities = List.of(
+                Activity.builder().id(8L).build(),
+                Activity.builder().id(3L).build());
+
+        var thrown = catchThrowable(() -> ActivitySnapshot.write(directory.resolve("activities.snapshot"),
+                activities.iterator(), 1L));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(IllegalArgumentException.class);
+        try (var files = Files.list(directory)) {
+            BDDAssertions.then(files)
+                    .isEmpty();
+        }
+    }
+
+    @Test
+    public void givenNoActivities_whenWrite_thenOpenEmptySnapshot() throws IOException {
+        var snapshot = ActivitySnapshot.write(directory.resolve("activities.snapshot"),
+                List.<Activity>of().iterator(), 0L);
+
+        BDDAssertions.then(snapshot.size())
+                .isZero();
+        BDDAssertions.then(snapshot.firstRowAfter(0L))
+                .isZero();
+        BDDAssertions.then(snapshot.findRow(1L))
+                .isEqualTo(-1);
+    }
+}
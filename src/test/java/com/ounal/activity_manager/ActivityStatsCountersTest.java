@@ -0,0 +1,175 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class ActivityStatsCountersTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+    @Mock
+    private ActivityTombstoneRepository activityTombstoneRepository;
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private ChangeVersionTracker changeVersionTracker;
+
+    private ActivityStatsCounters activityStatsCounters;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new ActivityStatsProperties();
+        properties.setRecountDelay(Duration.ofSeconds(5));
+
+        changeVersionTracker = new ChangeVersionTracker(activityRepository, activityTombstoneRepository);
+        activityStatsCounters = new ActivityStatsCounters(activityRepository, changeVersionTracker, properties,
+                taskScheduler);
+    }
+
+    @Test
+    public void givenAddedAndRemovedActivities_whenGetStats_thenAggregateDeltas() {
+        activityStatsCounters.added(activity("social", 2), 1L);
+        activityStatsCounters.added(activity("social", 4), 2L);
+        activityStatsCounters.added(activity("cooking", 2), 3L);
+        activityStatsCounters.removed(activity("cooking", 2), 4L);
+
+        var stats = activityStatsCounters.getStats();
+
+        BDDAssertions.then(stats.getCount())
+                .isEqualTo(2);
+        BDDAssertions.then(stats.getTotalParticipants())
+                .isEqualTo(6);
+        BDDAssertions.then(stats.getAverageParticipants())
+                .isEqualTo(3.0);
+        BDDAssertions.then(stats.getCountByType())
+                .isEqualTo(Map.of("social", 2L));
+        BDDAssertions.then(stats.getCountByParticipants())
+                .isEqualTo(Map.of(2, 1L, 4, 1L));
+    }
+
+    @Test
+    public void givenActivityWithoutParticipants_whenGetStats_thenLeaveItOutOfAverage() {
+        activityStatsCounters.added(activity("social", null), 1L);
+        activityStatsCounters.added(activity(null, 3), 2L);
+
+        var stats = activityStatsCounters.getStats();
+
+        BDDAssertions.then(stats.getCount())
+                .isEqualTo(2);
+        BDDAssertions.then(stats.getAverageParticipants())
+                .isEqualTo(3.0);
+        BDDAssertions.then(stats.getCountByType())
+                .isEqualTo(Map.of("social", 1L));
+    }
+
+    @Test
+    public void givenNoActivities_whenGetStats_thenAverageIsNull() {
+        BDDAssertions.then(activityStatsCounters.getStats().getAverageParticipants())
+                .isNull();
+    }
+
+    @Test
+    public void givenDriftedCounters_whenReconcileSoon_thenReplaceWithRecount() {
+        activityStatsCounters.added(activity("social", 2), 1L);
+
+        given(activityRepository.countByTypeAndParticipants())
+                .willReturn(List.of(groupCount("cooking", 1, 3), groupCount("cooking", 5, 1)));
+
+        activityStatsCounters.reconcileSoon();
+        runScheduledRecount();
+
+        var stats = activityStatsCounters.getStats();
+
+        BDDAssertions.then(stats.getCount())
+                .isEqualTo(4);
+        BDDAssertions.then(stats.getTotalParticipants())
+                .isEqualTo(8);
+        BDDAssertions.then(stats.getCountByType())
+                .isEqualTo(Map.of("cooking", 4L));
+        BDDAssertions.then(stats.getCountByParticipants())
+                .isEqualTo(Map.of(1, 3L, 5, 1L));
+    }
+
+    /**
+     * A write up to the fence is in the recount even when its delta arrives late, a write after it is not.
+     */
+    @Test
+    public void givenDeltasDuringRecount_whenReconcile_thenReplayOnlyThoseAfterFence() {
+        var committedVersion = changeVersionTracker.begin();
+        changeVersionTracker.end(committedVersion);
+
+        given(activityRepository.countByTypeAndParticipants())
+                .willAnswer(invocation -> {
+                    activityStatsCounters.added(activity("social", 2), committedVersion);
+                    activityStatsCounters.added(activity("cooking", 3), committedVersion + 1);
+                    return List.of(groupCount("social", 2, 1));
+                });
+
+        activityStatsCounters.reconcile();
+
+        BDDAssertions.then(activityStatsCounters.getStats().getCountByType())
+                .isEqualTo(Map.of("social", 1L, "cooking", 1L));
+    }
+
+    @Test
+    public void givenRecountPending_whenReconcileSoon_thenScheduleOnlyOnce() {
+        activityStatsCounters.reconcileSoon();
+        activityStatsCounters.reconcileSoon();
+
+        then(taskScheduler)
+                .should(times(1))
+                .schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    private void runScheduledRecount() {
+        var task = ArgumentCaptor.forClass(Runnable.class);
+        then(taskScheduler)
+                .should()
+                .schedule(task.capture(), any(Instant.class));
+        task.getValue().run();
+    }
+
+    private static Activity activity(String type, Integer participants) {
+        return Activity.builder()
+                .name("Activity name")
+                .type(type)
+                .participants(participants)
+                .build();
+    }
+
+    private static ActivityGroupCount groupCount(String type, Integer participants, long count) {
+        return new ActivityGroupCount() {
+            @Override
+            public String getType() {
+                return type;
+            }
+
+            @Override
+            public Integer getParticipants() {
+                return participants;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ChangeFeedReaderTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+    @Mock
+    private ActivityTombstoneRepository activityTombstoneRepository;
+
+    private ChangeFeedReader changeFeedReader;
+
+    @BeforeEach
+    void setUp() {
+        changeFeedReader = new ChangeFeedReader(activityRepository, activityTombstoneRepository,
+                new SyncTaskExecutor());
+    }
+
+    @Test
+    public void givenUpsertsAndTombstones_whenReadChanges_thenPassUpsertsBeforeDeletions() {
+        var upsert = Activity.builder().id(1L).name("Learn to play the piano").changeVersion(3L).build();
+        given(activityRepository.findChangesAfter(1L, Long.MAX_VALUE, 3L, Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(upsert));
+        given(activityTombstoneRepository.findTombstonesAfter(1L, Long.MAX_VALUE, 3L,
+                Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(new ActivityTombstone(1L, 3L), new ActivityTombstone(2L, 2L)));
+
+        var changes = new ArrayList<String>();
+        changeFeedReader.readChanges(1L, 3L,
+                activity -> changes.add("upserted " + activity.getId()),
+                id -> changes.add("deleted " + id));
+
+        BDDAssertions.then(changes)
+                .containsExactly("upserted 1", "deleted 1", "deleted 2");
+    }
+
+    @Test
+    public void givenBatchLargerThanReadBatch_whenReadChanges_thenPageThroughOneChangeVersion() {
+        var batch = new ArrayList<Activity>(ChangeFeedReader.BATCH_SIZE);
+        for (var id = 101L; id <= 100L + ChangeFeedReader.BATCH_SIZE; id++) {
+            batch.add(Activity.builder().id(id).name("Batch activity " + id).changeVersion(2L).build());
+        }
+        given(activityRepository.findChangesAfter(1L, Long.MAX_VALUE, 2L, Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(batch);
+        given(activityRepository.findChangesAfter(2L, 100L + ChangeFeedReader.BATCH_SIZE, 2L,
+                Limit.of(ChangeFeedReader.BATCH_SIZE)))
+                .willReturn(List.of(Activity.builder().id(2_000L).name("Play the piano").changeVersion(2L).build()));
+
+        var upserted = new ArrayList<Long>();
+        changeFeedReader.readChanges(1L, 2L, activity -> upserted.add(activity.getId()), id -> {
+        });
+
+        BDDAssertions.then(upserted)
+                .hasSize(ChangeFeedReader.BATCH_SIZE + 1)
+                .endsWith(2_000L);
+    }
+
+    @Test
+    public void givenFailingCatchUp_whenScheduleAgain_thenRunItAgain() {
+        var runs = new AtomicInteger();
+        var catchUp = changeFeedReader.newCatchUp("test store", () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("Database unavailable");
+        });
+
+        catchUp.schedule();
+        catchUp.schedule();
+
+        BDDAssertions.then(runs)
+                .hasValue(2);
+    }
+}
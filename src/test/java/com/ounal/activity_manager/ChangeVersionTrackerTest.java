@@ -0,0 +1,100 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ChangeVersionTrackerTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+    @Mock
+    private ActivityTombstoneRepository activityTombstoneRepository;
+
+    private ChangeVersionTracker changeVersionTracker;
+
+    @BeforeEach
+    void setUp() {
+        given(activityRepository.findMaxChangeVersion())
+                .willReturn(5L);
+        given(activityTombstoneRepository.findMaxChangeVersion())
+                .willReturn(8L);
+
+        changeVersionTracker = new ChangeVersionTracker(activityRepository, activityTombstoneRepository);
+        changeVersionTracker.init();
+    }
+
+    @Test
+    public void whenInit_thenContinueFromHighestStoredVersion() {
+        BDDAssertions.then(changeVersionTracker.getSafeVersion())
+                .isEqualTo(8L);
+        BDDAssertions.then(changeVersionTracker.begin())
+                .isEqualTo(9L);
+    }
+
+    @Test
+    public void givenOlderVersionInFlight_whenGetSafeVersion_thenStopBelowIt() {
+        var olderVersion = changeVersionTracker.begin();
+        var newerVersion = changeVersionTracker.begin();
+
+        changeVersionTracker.end(newerVersion);
+
+        BDDAssertions.then(changeVersionTracker.getSafeVersion())
+                .isEqualTo(olderVersion - 1);
+
+        changeVersionTracker.end(olderVersion);
+
+        BDDAssertions.then(changeVersionTracker.getSafeVersion())
+                .isEqualTo(newerVersion);
+    }
+
+    @Test
+    public void givenFenceUp_whenTryBegin_thenWaitForItToBeLifted() {
+        var fenceLifted = new AtomicReference<CompletableFuture<Void>>();
+
+        var fenceVersion = changeVersionTracker.runFenced(() -> {
+            BDDAssertions.then(changeVersionTracker.tryBegin())
+                    .isEmpty();
+            fenceLifted.set(changeVersionTracker.getFenceLifted());
+        });
+
+        BDDAssertions.then(fenceVersion)
+                .isEqualTo(8L);
+        BDDAssertions.then(fenceLifted.get())
+                .isCompleted();
+        BDDAssertions.then(changeVersionTracker.tryBegin())
+                .hasValue(9L);
+    }
+
+    @Test
+    public void givenVersionInFlight_whenRunFenced_thenReadOnceItHasEnded() throws Exception {
+        var version = changeVersionTracker.begin();
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var fenceVersion = executor.submit(() -> changeVersionTracker.runFenced(() -> {
+            }));
+
+            Thread.sleep(100);
+            BDDAssertions.then(fenceVersion)
+                    .isNotDone();
+
+            changeVersionTracker.end(version);
+
+            BDDAssertions.then(fenceVersion.get(5, TimeUnit.SECONDS))
+                    .isEqualTo(version);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.ounal.activity_manager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ounal.activity_manager.ActivityService.BORED_API_GET_RANDOM_ACTIVITY_URL;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+public class RandomActivityPoolTest {
+
+    private static final ActivityDto ACTIVITY_DTO = ActivityDto.builder()
+            .name("random name")
+            .type("random type")
+            .participants(24)
+            .build();
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private RandomActivityPoolProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private RandomActivityPool randomActivityPool;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RandomActivityPoolProperties();
+        properties.setCapacity(4);
+        properties.setLowWaterMark(1);
+        properties.setRefillConcurrency(2);
+
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void givenPoolDisabled_whenTake_thenFetchSynchronouslyWithoutRefill() {
+        properties.setEnabled(false);
+        randomActivityPool = new RandomActivityPool(restTemplate, new UpstreamProperties(), properties, meterRegistry, new SimpleAsyncTaskExecutor());
+
+        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
+                .willReturn(ACTIVITY_DTO);
+
+        var actualActivityDto = randomActivityPool.take();
+
+        BDDAssertions.then(actualActivityDto)
+                .isEqualTo(ACTIVITY_DTO);
+        BDDMockito.then(restTemplate)
+                .should()
+                .getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class);
+        BDDAssertions.then(poolSize())
+                .isZero();
+    }
+
+    @Test
+    public void givenEmptyPool_whenTake_thenFetchSynchronouslyAndCountMiss() {
+        randomActivityPool = new RandomActivityPool(restTemplate, new UpstreamProperties(), properties, meterRegistry, new SimpleAsyncTaskExecutor());
+
+        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
+                .willReturn(ACTIVITY_DTO);
+
+        var actualActivityDto = randomActivityPool.take();
+
+        BDDAssertions.then(actualActivityDto)
+                .isEqualTo(ACTIVITY_DTO);
+        BDDAssertions.then(requests("miss"))
+                .isEqualTo(1.0);
+        BDDAssertions.then(requests("hit"))
+                .isZero();
+    }
+
+    @Test
+    public void givenPoolRefilled_whenTake_thenReturnPrefetchedActivityAndCountHit() throws Exception {
+        randomActivityPool = new RandomActivityPool(restTemplate, new UpstreamProperties(), properties, meterRegistry, new SimpleAsyncTaskExecutor());
+
+        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
+                .willReturn(ACTIVITY_DTO);
+
+        randomActivityPool.take();
+        awaitPoolSize(properties.getCapacity());
+
+        Mockito.clearInvocations(restTemplate);
+
+        var actualActivityDto = randomActivityPool.take();
+
+        BDDAssertions.then(actualActivityDto)
+                .isEqualTo(ACTIVITY_DTO);
+        BDDAssertions.then(requests("hit"))
+                .isEqualTo(1.0);
+        // The pool is still above the low-water mark, so nothing is fetched
+        BDDMockito.then(restTemplate)
+                .should(never())
+                .getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class);
+    }
+
+    @Test
+    public void givenBatchMissingThePool_whenTakeSeveral_thenFetchTheRestWithBoundedConcurrency() {
+        properties.setEnabled(false);
+        properties.setFetchConcurrency(2);
+        randomActivityPool = new RandomActivityPool(restTemplate, new UpstreamProperties(), properties, meterRegistry, new SimpleAsyncTaskExecutor());
+
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
+                .willAnswer(invocation -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    inFlight.decrementAndGet();
+                    return ACTIVITY_DTO;
+                });
+
+        var actualActivityDtos = randomActivityPool.take(5);
+
+        BDDAssertions.then(actualActivityDtos)
+                .hasSize(5)
+                .containsOnly(ACTIVITY_DTO);
+        BDDAssertions.then(maxInFlight.get())
+                .isBetween(1, 2);
+    }
+
+    @Test
+    public void givenUpstreamFailsAfterSomeFetches_whenTakeSeveral_thenReturnWhatWasFetched() {
+        properties.setEnabled(false);
+        properties.setFetchConcurrency(1);
+        randomActivityPool = new RandomActivityPool(restTemplate, new UpstreamProperties(), properties, meterRegistry, new SimpleAsyncTaskExecutor());
+
+        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
+                .willReturn(ACTIVITY_DTO)
+                .willThrow(new UpstreamUnavailableException("Bored API"));
+
+        var actualActivityDtos = randomActivityPool.take(3);
+
+        BDDAssertions.then(actualActivityDtos)
+                .containsExactly(ACTIVITY_DTO);
+    }
+
+    @Test
+    public void givenUpstreamFails_whenTakeSeveral_thenThrow() {
+        properties.setEnabled(false);
+        randomActivityPool = new RandomActivityPool(restTemplate, new UpstreamProperties(), properties, meterRegistry, new SimpleAsyncTaskExecutor());
+
+        given(restTemplate.getForObject(BORED_API_GET_RANDOM_ACTIVITY_URL, ActivityDto.class))
+                .willThrow(new UpstreamUnavailableException("Bored API"));
+
+        var thrown = catchThrowable(() -> randomActivityPool.take(3));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(UpstreamUnavailableException.class);
+    }
+
+    private double poolSize() {
+        return meterRegistry.get("activity.random.pool.size").gauge().value();
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("activity.random.pool.requests").tag("result", result).counter().count();
+    }
+
+    private void awaitPoolSize(int expectedSize) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 5000;
+        while (poolSize() < expectedSize && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        BDDAssertions.then(poolSize())
+                .isEqualTo(expectedSize);
+    }
+}
@@ -0,0 +1,140 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RequestCoalescerTest {
+
+    private static final Duration LONG_WINDOW = Duration.ofSeconds(30);
+
+    @Test
+    public void givenNoCallInFlight_whenCall_thenRunAtOnceWithoutWaitingForWindow() {
+        var batchSizes = new CopyOnWriteArrayList<Integer>();
+        var requestCoalescer = new RequestCoalescer<Integer>(LONG_WINDOW, 10, count -> {
+            batchSizes.add(count);
+            return IntStream.range(0, count).boxed().toList();
+        });
+
+        var started = System.nanoTime();
+        var result = requestCoalescer.call();
+
+        BDDAssertions.then(Duration.ofNanos(System.nanoTime() - started))
+                .isLessThan(Duration.ofSeconds(5));
+        BDDAssertions.then(result)
+                .isZero();
+        BDDAssertions.then(batchSizes)
+                .containsExactly(1);
+    }
+
+    @Test
+    public void givenCallInFlight_whenCall_thenServeFollowersWithOneBatchAndHandEachItsOwnResult() throws Exception {
+        var batchSizes = new CopyOnWriteArrayList<Integer>();
+        var counter = new AtomicInteger();
+
+        var started = System.nanoTime();
+        var results = callWhileOneIsInFlight(10, count -> {
+            batchSizes.add(count);
+            return IntStream.range(0, count).mapToObj(i -> counter.incrementAndGet()).toList();
+        }, 4);
+
+        // The followers ran once the call in flight had completed, long before the window had passed
+        BDDAssertions.then(Duration.ofNanos(System.nanoTime() - started))
+                .isLessThan(LONG_WINDOW.dividedBy(2));
+        BDDAssertions.then(batchSizes)
+                .containsExactly(1, 4);
+        BDDAssertions.then(results)
+                .containsExactlyInAnyOrder(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void givenMoreFollowersThanMaxBatchSize_whenCall_thenSplitThemIntoSeveralBatches() throws Exception {
+        var batchSizes = new CopyOnWriteArrayList<Integer>();
+
+        callWhileOneIsInFlight(2, count -> {
+            batchSizes.add(count);
+            return IntStream.range(0, count).boxed().toList();
+        }, 5);
+
+        BDDAssertions.then(batchSizes)
+                .allSatisfy(size -> BDDAssertions.then(size).isLessThanOrEqualTo(2));
+        BDDAssertions.then(batchSizes.stream().mapToInt(Integer::intValue).sum())
+                .isEqualTo(6);
+    }
+
+    @Test
+    public void givenFewerResultsThanCalls_whenCall_thenReturnNullToTheRest() throws Exception {
+        var results = callWhileOneIsInFlight(10, count -> List.of(1), 2);
+
+        BDDAssertions.then(results)
+                .containsExactlyInAnyOrder(1, 1, null);
+    }
+
+    @Test
+    public void givenBatchFunctionThrows_whenCall_thenThrowToEveryCaller() {
+        var requestCoalescer = new RequestCoalescer<Integer>(Duration.ZERO, 10, count -> {
+            throw new UpstreamUnavailableException("Bored API");
+        });
+
+        var thrown = catchThrowable(requestCoalescer::call);
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(UpstreamUnavailableException.class);
+    }
+
+    /**
+     * Holds the first call in the batch function until the followers have arrived, so they queue up behind it.
+     * Returns the results of every call, the first one's included.
+     */
+    private static List<Integer> callWhileOneIsInFlight(int maxBatchSize, IntFunction<List<Integer>> batchFunction,
+                                                        int followers) throws Exception {
+        var first = new AtomicBoolean(true);
+        var inFlight = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var requestCoalescer = new RequestCoalescer<Integer>(LONG_WINDOW, maxBatchSize, count -> {
+            if (first.compareAndSet(true, false)) {
+                inFlight.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return batchFunction.apply(count);
+        });
+
+        var executor = Executors.newFixedThreadPool(followers + 1);
+        try {
+            var futures = new ArrayList<CompletableFuture<Integer>>();
+            futures.add(CompletableFuture.supplyAsync(requestCoalescer::call, executor));
+            inFlight.await();
+            for (var i = 0; i < followers; i++) {
+                futures.add(CompletableFuture.supplyAsync(requestCoalescer::call, executor));
+            }
+            // Long enough for the followers to join, far shorter than the window
+            Thread.sleep(200);
+            release.countDown();
+
+            var results = new ArrayList<Integer>();
+            for (var future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ounal.activity_manager;
+
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+public class UpstreamCircuitBreakerTest {
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    @Mock
+    private ClientHttpRequestExecution execution;
+    @Mock
+    private Clock clock;
+
+    private MockClientHttpRequest request;
+    private UpstreamCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        request = new MockClientHttpRequest(HttpMethod.GET, URI.create("https://bored-api.appbrewery.com/random"));
+        circuitBreaker = new UpstreamCircuitBreaker(2, Duration.ofSeconds(30), clock);
+    }
+
+    @Test
+    public void givenSuccessfulResponses_whenIntercept_thenStayClosed() throws Exception {
+        given(execution.execute(request, EMPTY_BODY))
+                .willReturn(new MockClientHttpResponse(EMPTY_BODY, HttpStatus.OK));
+
+        circuitBreaker.intercept(request, EMPTY_BODY, execution);
+        circuitBreaker.intercept(request, EMPTY_BODY, execution);
+
+        BDDAssertions.then(circuitBreaker.getState())
+                .isEqualTo(UpstreamCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void givenFailuresReachThreshold_whenIntercept_thenOpenAndFailFast() throws Exception {
+        given(clock.millis())
+                .willReturn(1_000L);
+        given(execution.execute(request, EMPTY_BODY))
+                .willThrow(new IOException("connection refused"))
+                .willReturn(new MockClientHttpResponse(EMPTY_BODY, HttpStatus.SERVICE_UNAVAILABLE));
+
+        catchThrowable(() -> circuitBreaker.intercept(request, EMPTY_BODY, execution));
+        circuitBreaker.intercept(request, EMPTY_BODY, execution);
+
+        BDDAssertions.then(circuitBreaker.getState())
+                .isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+
+        BDDMockito.reset(execution);
+
+        var thrown = catchThrowable(() -> circuitBreaker.intercept(request, EMPTY_BODY, execution));
+
+        BDDAssertions.then(thrown)
+                .isInstanceOf(UpstreamUnavailableException.class);
+        BDDMockito.then(execution)
+                .should(never())
+                .execute(any(), any());
+    }
+
+    @Test
+    public void givenOpenDurationPassed_whenTrialSucceeds_thenClose() throws Exception {
+        given(clock.millis())
+                .willReturn(1_000L, 31_000L);
+        given(execution.execute(request, EMPTY_BODY))
+                .willReturn(new MockClientHttpResponse(EMPTY_BODY, HttpStatus.INTERNAL_SERVER_ERROR))
+                .willReturn(new MockClientHttpResponse(EMPTY_BODY, HttpStatus.INTERNAL_SERVER_ERROR))
+                .willReturn(new MockClientHttpResponse(EMPTY_BODY, HttpStatus.OK));
+
+        circuitBreaker.intercept(request, EMPTY_BODY, execution);
+        circuitBreaker.intercept(request, EMPTY_BODY, execution);
+
+        var response = circuitBreaker.intercept(request, EMPTY_BODY, execution);
+
+        BDDAssertions.then(response.getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        BDDAssertions.then(circuitBreaker.getState())
+                .isEqualTo(UpstreamCircuitBreaker.State.CLOSED);
+    }
+}